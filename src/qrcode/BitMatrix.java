@@ -0,0 +1,304 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Packed representation of a QR code matrix where every module is stored as a single bit
+ * (1 for a dark module, 0 for a light one).
+ *
+ * Modules are indexed exactly like the int[][] matrices used everywhere else in the project, which means that
+ * get(x, y) corresponds to matrix[x][y]. Each line x is stored on consecutive longs, 64 modules per word, with
+ * the module y at the bit (y % 64) of the word (y / 64). The unused bits at the end of a line are always 0, so
+ * that whole words can be combined with bitwise operations without any special case.
+ *
+ * A packed matrix is also the materialized ModuleSource of its modules.
+ */
+public final class BitMatrix implements ModuleSource {
+
+	private final int width;
+	private final int height;
+	private final int wordsPerLine;
+	private final long[] words;
+
+	/**
+	 * Create an empty (fully light) packed matrix
+	 *
+	 * @param width the amount of lines (first index of the int[][] matrices)
+	 * @param height the amount of modules in a line (second index of the int[][] matrices)
+	 */
+	public BitMatrix(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("The size of the matrix must be positive.");
+
+		this.width = width;
+		this.height = height;
+		this.wordsPerLine = (height + 63) >>> 6;
+		this.words = new long[width * wordsPerLine];
+	}
+
+	/**
+	 * Create an empty square packed matrix
+	 *
+	 * @param size the amount of modules on each side of the matrix
+	 */
+	public BitMatrix(int size) {
+		this(size, size);
+	}
+
+	/**
+	 * Pack the dark modules of an int[][] matrix
+	 *
+	 * @param matrix the matrix to pack
+	 * @return a packed matrix with a bit set for every module equal to MatrixConstruction.B
+	 */
+	public static BitMatrix fromMatrix(int[][] matrix) {
+		BitMatrix bits = new BitMatrix(matrix.length, matrix[0].length);
+		for (int x = 0; x < matrix.length; x++) {
+			for (int y = 0; y < matrix[x].length; y++) {
+				if (matrix[x][y] == MatrixConstruction.B) bits.set(x, y);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Pack the modules of an int[][] matrix which have not been set yet (equal to 0)
+	 *
+	 * @param matrix the matrix to look into
+	 * @return a packed matrix with a bit set for every empty module
+	 */
+	public static BitMatrix emptyModules(int[][] matrix) {
+		BitMatrix bits = new BitMatrix(matrix.length, matrix[0].length);
+		for (int x = 0; x < matrix.length; x++) {
+			for (int y = 0; y < matrix[x].length; y++) {
+				if (matrix[x][y] == 0) bits.set(x, y);
+			}
+		}
+		return bits;
+	}
+
+	// Getters
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getWordsPerLine() { return wordsPerLine; }
+
+	/**
+	 * Direct access to the packed words, line x starts at the index x * getWordsPerLine().
+	 * This is the array backing the matrix, any modification is reflected in the matrix.
+	 *
+	 * @return the packed words
+	 */
+	public long[] getWords() { return words; }
+
+	public boolean get(int x, int y) {
+		return (words[x * wordsPerLine + (y >>> 6)] & (1L << y)) != 0;
+	}
+
+	@Override
+	public boolean isDark(int x, int y) {
+		return get(x, y);
+	}
+
+	public void set(int x, int y) {
+		words[x * wordsPerLine + (y >>> 6)] |= 1L << y;
+	}
+
+	public void set(int x, int y, boolean dark) {
+		if (dark) set(x, y);
+		else clear(x, y);
+	}
+
+	public void clear(int x, int y) {
+		words[x * wordsPerLine + (y >>> 6)] &= ~(1L << y);
+	}
+
+	/**
+	 * Reset every module of the matrix to light
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Get a word of a line
+	 *
+	 * @param x the line
+	 * @param w the index of the word in the line
+	 * @return the 64 modules (y = 64 * w to 64 * w + 63) of the line packed in a long
+	 */
+	public long getWord(int x, int w) {
+		return words[x * wordsPerLine + w];
+	}
+
+	/**
+	 * In-place XOR with another matrix of the same size, one operation per 64 modules.
+	 *
+	 * @param other the matrix to XOR with
+	 * @return this matrix
+	 */
+	public BitMatrix xor(BitMatrix other) {
+		checkSameSize(other);
+		for (int i = 0; i < words.length; i++) words[i] ^= other.words[i];
+		return this;
+	}
+
+	/**
+	 * In-place AND with another matrix of the same size
+	 *
+	 * @param other the matrix to AND with
+	 * @return this matrix
+	 */
+	public BitMatrix and(BitMatrix other) {
+		checkSameSize(other);
+		for (int i = 0; i < words.length; i++) words[i] &= other.words[i];
+		return this;
+	}
+
+	/**
+	 * In-place OR with another matrix of the same size
+	 *
+	 * @param other the matrix to OR with
+	 * @return this matrix
+	 */
+	public BitMatrix or(BitMatrix other) {
+		checkSameSize(other);
+		for (int i = 0; i < words.length; i++) words[i] |= other.words[i];
+		return this;
+	}
+
+	/**
+	 * In-place AND with the complement of another matrix of the same size, clearing every module set in the other
+	 * matrix
+	 *
+	 * @param other the modules to clear
+	 * @return this matrix
+	 */
+	public BitMatrix andNot(BitMatrix other) {
+		checkSameSize(other);
+		for (int i = 0; i < words.length; i++) words[i] &= ~other.words[i];
+		return this;
+	}
+
+	/**
+	 * Copy all the modules of another matrix of the same size into this one
+	 *
+	 * @param other the matrix to copy
+	 * @return this matrix
+	 */
+	public BitMatrix copyFrom(BitMatrix other) {
+		checkSameSize(other);
+		System.arraycopy(other.words, 0, words, 0, words.length);
+		return this;
+	}
+
+	/**
+	 * @return an independent copy of this matrix
+	 */
+	public BitMatrix copy() {
+		return new BitMatrix(width, height).copyFrom(this);
+	}
+
+	/**
+	 * @return the amount of dark modules in the matrix
+	 */
+	public int bitCount() {
+		int count = 0;
+		for (long word : words) count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * Transpose this matrix into another one, so that the lines of the target are the columns of this matrix
+	 *
+	 * @param target the matrix to write into, its width must be the height of this matrix and vice versa
+	 * @return the target matrix
+	 */
+	public BitMatrix transposeInto(BitMatrix target) {
+		if (target.width != height || target.height != width)
+			throw new IllegalArgumentException("The target matrix must have the transposed size.");
+
+		target.clear();
+		for (int x = 0; x < width; x++) {
+			for (int w = 0; w < wordsPerLine; w++) {
+				long dark = words[x * wordsPerLine + w];
+				while (dark != 0) {
+					target.set((w << 6) + Long.numberOfTrailingZeros(dark), x);
+					dark &= dark - 1;
+				}
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * @return the transposed matrix, where the lines are the columns of this matrix
+	 */
+	public BitMatrix transpose() {
+		return transposeInto(new BitMatrix(height, width));
+	}
+
+	/**
+	 * Write the modules selected by a region into an int[][] matrix, the other modules of the matrix are left
+	 * untouched.
+	 *
+	 * @param matrix the matrix to write into, it must have the same size as this matrix
+	 * @param region the modules to write
+	 */
+	public void writeTo(int[][] matrix, BitMatrix region) {
+		checkSameSize(region);
+		for (int x = 0; x < width; x++) {
+			for (int w = 0; w < wordsPerLine; w++) {
+				long selected = region.words[x * wordsPerLine + w];
+				long dark = words[x * wordsPerLine + w];
+				// only visit the selected modules, skipping directly to the next one
+				while (selected != 0) {
+					int bit = Long.numberOfTrailingZeros(selected);
+					matrix[x][(w << 6) + bit] = (dark >>> bit & 1L) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+					selected &= selected - 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write every module into an int[][] matrix of the same size
+	 *
+	 * @param matrix the matrix to write into
+	 */
+	public void writeTo(int[][] matrix) {
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				matrix[x][y] = get(x, y) ? MatrixConstruction.B : MatrixConstruction.W;
+			}
+		}
+	}
+
+	/**
+	 * Unpack the matrix
+	 *
+	 * @return an int[][] matrix with MatrixConstruction.B for each dark module and MatrixConstruction.W otherwise
+	 */
+	public int[][] toMatrix() {
+		int[][] matrix = new int[width][height];
+		writeTo(matrix);
+		return matrix;
+	}
+
+	private void checkSameSize(BitMatrix other) {
+		if (other.width != width || other.height != height)
+			throw new IllegalArgumentException("The two matrices must have the same size.");
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BitMatrix)) return false;
+		BitMatrix other = (BitMatrix) o;
+		return width == other.width && height == other.height && Arrays.equals(words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * width + height) + Arrays.hashCode(words);
+	}
+}
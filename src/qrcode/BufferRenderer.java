@@ -0,0 +1,253 @@
+package qrcode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Renderer drawing symbols directly into pixel buffers provided by the caller, such as the pixels of a document
+ * image on which the symbol is stamped.
+ *
+ * The target is a region of an int[] (one ARGB pixel per int), of a byte[] or of a ByteBuffer (in a PixelFormat),
+ * given by the index of its top left pixel and the distance between two rows (the stride). The colors of the
+ * modules are given by a ColorMap, black and white by default, and a fully transparent color leaves the pixel of
+ * the target untouched, so that for instance only the dark modules of a symbol can be stamped.
+ *
+ * Every row of modules is colored once, and its first row of pixels is copied on the others when it has no
+ * transparent module.
+ */
+public final class BufferRenderer {
+
+	/**
+	 * Layouts of the pixels in bytes
+	 */
+	public enum PixelFormat {
+		GRAY(1), RGB(3), BGR(3), ARGB(4), RGBA(4), BGRA(4), ABGR(4);
+
+		private final int bytesPerPixel;
+
+		PixelFormat(int bytesPerPixel) {
+			this.bytesPerPixel = bytesPerPixel;
+		}
+
+		public int getBytesPerPixel() { return bytesPerPixel; }
+
+		/*
+		 * Write an ARGB color in the layout of the format
+		 */
+		void encode(int argb, byte[] pixel) {
+			byte a = (byte) (argb >>> 24);
+			byte r = (byte) (argb >>> 16);
+			byte g = (byte) (argb >>> 8);
+			byte b = (byte) argb;
+			switch (this) {
+				case GRAY:
+					pixel[0] = (byte) ((299 * (r & 0xFF) + 587 * (g & 0xFF) + 114 * (b & 0xFF)) / 1000);
+					break;
+				case RGB: pixel[0] = r; pixel[1] = g; pixel[2] = b; break;
+				case BGR: pixel[0] = b; pixel[1] = g; pixel[2] = r; break;
+				case ARGB: pixel[0] = a; pixel[1] = r; pixel[2] = g; pixel[3] = b; break;
+				case RGBA: pixel[0] = r; pixel[1] = g; pixel[2] = b; pixel[3] = a; break;
+				case BGRA: pixel[0] = b; pixel[1] = g; pixel[2] = r; pixel[3] = a; break;
+				case ABGR: pixel[0] = a; pixel[1] = b; pixel[2] = g; pixel[3] = r; break;
+				default: throw new AssertionError(this);
+			}
+		}
+	}
+
+	/**
+	 * Colors of the modules
+	 */
+	@FunctionalInterface
+	public interface ColorMap {
+		/**
+		 * @param x the x coordinate of the module, negative or beyond the width in the quiet zone
+		 * @param y the y coordinate of the module, negative or beyond the height in the quiet zone
+		 * @param dark whether the module is dark (never in the quiet zone)
+		 * @return the ARGB color of the module, or a color whose alpha is 0 to leave its pixels untouched
+		 */
+		int getColor(int x, int y, boolean dark);
+	}
+
+	private final int moduleSize;
+	private final int quietZone;
+	private final ColorMap colors;
+
+	/**
+	 * Create a renderer of black and white modules
+	 *
+	 * @see BufferRenderer#BufferRenderer(int, int, ColorMap)
+	 */
+	public BufferRenderer(int moduleSize, int quietZone) {
+		this(moduleSize, quietZone, MatrixConstruction.B, MatrixConstruction.W);
+	}
+
+	/**
+	 * Create a renderer of modules of two colors
+	 *
+	 * @param foreground the ARGB color of the dark modules, or 0 to leave them untouched
+	 * @param background the ARGB color of the light modules and of the quiet zone, or 0 to leave them untouched
+	 * @see BufferRenderer#BufferRenderer(int, int, ColorMap)
+	 */
+	public BufferRenderer(int moduleSize, int quietZone, int foreground, int background) {
+		this(moduleSize, quietZone, (x, y, dark) -> dark ? foreground : background);
+	}
+
+	/**
+	 * @param moduleSize the size of a module in pixels
+	 * @param quietZone the size of the quiet zone around the symbol in modules
+	 * @param colors the colors of the modules
+	 */
+	public BufferRenderer(int moduleSize, int quietZone, ColorMap colors) {
+		if (moduleSize < 1)
+			throw new IllegalArgumentException("The module size must be positive.");
+		if (quietZone < 0)
+			throw new IllegalArgumentException("The quiet zone must not be negative.");
+
+		this.moduleSize = moduleSize;
+		this.quietZone = quietZone;
+		this.colors = colors;
+	}
+
+	/**
+	 * @param symbol the modules of the symbol
+	 * @return the width of the rendering of the symbol with its quiet zone, in pixels
+	 */
+	public int getWidth(ModuleSource symbol) {
+		return (symbol.getWidth() + 2 * quietZone) * moduleSize;
+	}
+
+	/**
+	 * @param symbol the modules of the symbol
+	 * @return the height of the rendering of the symbol with its quiet zone, in pixels
+	 */
+	public int getHeight(ModuleSource symbol) {
+		return (symbol.getHeight() + 2 * quietZone) * moduleSize;
+	}
+
+	/**
+	 * Render a symbol in ARGB pixels
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param pixels the pixels of the target
+	 * @param offset the index of the top left pixel of the rendering
+	 * @param stride the distance between two rows of the target, in pixels
+	 * @throws IndexOutOfBoundsException if the rendering does not fit in the target
+	 */
+	public void render(ModuleSource symbol, int[] pixels, int offset, int stride) {
+		int width = getWidth(symbol);
+		checkBounds(symbol, pixels.length, offset, stride, width);
+
+		int[] moduleColors = new int[symbol.getWidth() + 2 * quietZone];
+		long[] row = new long[(symbol.getWidth() + 63) >>> 6];
+		for (int my = -quietZone; my < symbol.getHeight() + quietZone; my++) {
+			boolean opaque = colorRow(symbol, my, row, moduleColors);
+			int start = offset + (my + quietZone) * moduleSize * stride;
+
+			for (int y = 0; y < moduleSize; y++) {
+				int line = start + y * stride;
+				if (y > 0 && opaque) {
+					System.arraycopy(pixels, start, pixels, line, width);
+					continue;
+				}
+				for (int i = 0; i < moduleColors.length; i++) {
+					if (moduleColors[i] >>> 24 == 0) continue;
+					Arrays.fill(pixels, line + i * moduleSize, line + (i + 1) * moduleSize, moduleColors[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Render a symbol in pixels of bytes
+	 *
+	 * @see BufferRenderer#render(ModuleSource, ByteBuffer, int, int, PixelFormat)
+	 */
+	public void render(ModuleSource symbol, byte[] pixels, int offset, int stride, PixelFormat format) {
+		render(symbol, ByteBuffer.wrap(pixels), offset, stride, format);
+	}
+
+	/**
+	 * Render a symbol in pixels of bytes. The position and the limit of the buffer are not used nor modified.
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param pixels the pixels of the target
+	 * @param offset the index of the first byte of the top left pixel of the rendering
+	 * @param stride the distance between two rows of the target, in bytes
+	 * @param format the layout of the pixels
+	 * @throws IndexOutOfBoundsException if the rendering does not fit in the target
+	 */
+	public void render(ModuleSource symbol, ByteBuffer pixels, int offset, int stride, PixelFormat format) {
+		int bytesPerPixel = format.getBytesPerPixel();
+		int lineBytes = getWidth(symbol) * bytesPerPixel;
+		checkBounds(symbol, pixels.capacity(), offset, stride, lineBytes);
+
+		ByteBuffer target = pixels.duplicate();
+		target.clear();
+		byte[] line = new byte[lineBytes];
+		byte[] pixel = new byte[bytesPerPixel];
+		int[] moduleColors = new int[symbol.getWidth() + 2 * quietZone];
+		long[] row = new long[(symbol.getWidth() + 63) >>> 6];
+
+		for (int my = -quietZone; my < symbol.getHeight() + quietZone; my++) {
+			boolean opaque = colorRow(symbol, my, row, moduleColors);
+			int start = offset + (my + quietZone) * moduleSize * stride;
+
+			for (int y = 0; y < moduleSize; y++) {
+				target.position(start + y * stride);
+				if (y == 0 || !opaque) {
+					// the transparent modules keep the pixels of the target
+					if (!opaque) {
+						target.get(line);
+						target.position(start + y * stride);
+					}
+					paint(moduleColors, line, pixel, format);
+				}
+				target.put(line);
+			}
+		}
+	}
+
+	/*
+	 * Paint the modules of a row on a line of bytes
+	 */
+	private void paint(int[] moduleColors, byte[] line, byte[] pixel, PixelFormat format) {
+		int bytesPerPixel = pixel.length;
+		for (int i = 0; i < moduleColors.length; i++) {
+			if (moduleColors[i] >>> 24 == 0) continue;
+
+			format.encode(moduleColors[i], pixel);
+			int start = i * moduleSize * bytesPerPixel;
+			if (bytesPerPixel == 1) {
+				Arrays.fill(line, start, start + moduleSize, pixel[0]);
+			} else {
+				for (int p = 0; p < moduleSize; p++) {
+					System.arraycopy(pixel, 0, line, start + p * bytesPerPixel, bytesPerPixel);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Get the colors of a row of modules, quiet zone included, and whether none of them is transparent
+	 */
+	private boolean colorRow(ModuleSource symbol, int my, long[] row, int[] moduleColors) {
+		boolean inside = my >= 0 && my < symbol.getHeight();
+		if (inside) symbol.getRow(my, row);
+
+		boolean opaque = true;
+		for (int i = 0; i < moduleColors.length; i++) {
+			int mx = i - quietZone;
+			boolean dark = inside && mx >= 0 && mx < symbol.getWidth() && (row[mx >>> 6] & 1L << mx) != 0;
+			moduleColors[i] = colors.getColor(mx, my, dark);
+			opaque &= moduleColors[i] >>> 24 != 0;
+		}
+		return opaque;
+	}
+
+	private void checkBounds(ModuleSource symbol, int length, int offset, int stride, int lineLength) {
+		long last = offset + (long) (getHeight(symbol) - 1) * stride + lineLength;
+		if (offset < 0 || stride < lineLength || last > length)
+			throw new IndexOutOfBoundsException("The rendering of " + lineLength + " by " + getHeight(symbol)
+					+ " does not fit in the target at " + offset + " with a stride of " + stride + ".");
+	}
+}
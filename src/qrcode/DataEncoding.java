@@ -18,6 +18,9 @@ public final class DataEncoding {
 	 * @return Byte array in booleans of the encoded string with added ECC
 	 */
 	public static boolean[] byteModeEncoding(String input, int version) {
+		if (USE_EXTENSIONS && MicroQRCode.isMicroVersion(version))
+			return MicroQRCode.encode(input, version, Extensions.CORRECTION_LEVEL);
+
 		if (version < 1 || version > 40) {
 			if (USE_EXTENSIONS)
 				throw new UnsupportedOperationException("The version must be between 1 and 40 included.");
@@ -0,0 +1,301 @@
+package qrcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of encoded QR codes, stored in a memory-mapped append-only segment file.
+ *
+ * The segment starts with a header (magic number, format version and end of the written records), followed by
+ * the records one after the other:
+ *
+ * 		length (int) | key length (int) | key (UTF-8) | value | CRC32 (int)
+ *
+ * the length covering the whole record and the CRC everything between the length and the CRC. Replacing a key
+ * appends a new record, the previous one becoming dead. The index (bytes of the key to offset of its last record)
+ * is rebuilt when the segment is opened by walking the records, stopping at the first one which is incomplete or
+ * corrupted. Lookups then only read the mapped memory, without any system call.
+ *
+ * The segment never grows beyond its capacity: when a record does not fit, the live records are moved down in
+ * place, the oldest ones being dropped until the segment is filled to at most LOW_WATER_MARK of its capacity, so
+ * that the next records are appended without compacting again. The end of the records is reset while they are
+ * moved, so a crash during a compaction empties the cache rather than exposing records half moved. Both the
+ * matrices and the rendered images can be cached, keyed like the EncodedCache, MATRIX_FORMAT being the format of
+ * the matrices.
+ *
+ * The file is never shrunk, a segment reopened with a smaller capacity being only compacted into it, and it stays
+ * mapped until the cache is closed and its mapping collected by the garbage collector, Java having no explicit
+ * unmapping. A cache is thread-safe, but a segment must not be opened by several caches at the same time.
+ *
+ * @see EncodedCache.Key
+ */
+public final class DiskCache implements Closeable {
+
+	/**
+	 * Format of the keys of the matrix stage, see getMatrix(String, int, CorrectionLevel, int)
+	 */
+	public static final String MATRIX_FORMAT = "matrix";
+
+	/**
+	 * Fraction of the capacity to which the segment is compacted when a record does not fit
+	 */
+	public static final double LOW_WATER_MARK = 0.75;
+
+	private static final int MAGIC = 0x51524443; // "QRDC"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int END_OFFSET = 8;
+	// length, key length and CRC
+	private static final int RECORD_OVERHEAD = 4 + 4 + 4;
+	private static final int KEY_OFFSET = 8;
+
+	private final Path path;
+	private final int capacity;
+	// wrapped bytes of the keys, which compare by content
+	private final Map<ByteBuffer, Integer> index = new HashMap<>();
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private int end;
+	private long liveBytes;
+	private int compactions;
+
+	/**
+	 * Open a cache, creating its segment if it does not exist
+	 *
+	 * @param path the path of the segment file
+	 * @param capacity the maximal size of the segment in bytes
+	 * @throws IOException if the segment cannot be opened or is not a segment
+	 */
+	public DiskCache(Path path, int capacity) throws IOException {
+		if (capacity < HEADER_SIZE + RECORD_OVERHEAD)
+			throw new IllegalArgumentException("The capacity of the cache is too small.");
+
+		this.path = path;
+		this.capacity = capacity;
+		open();
+		if (end > capacity) compact(0, capacity * LOW_WATER_MARK);
+	}
+
+	/**
+	 * Get cached bytes
+	 *
+	 * @param key the key of the encoding
+	 * @return a copy of the cached bytes, or null if the key is not cached
+	 */
+	public synchronized byte[] get(EncodedCache.Key key) {
+		checkOpen();
+		byte[] keyBytes = toBytes(key);
+		Integer offset = index.get(ByteBuffer.wrap(keyBytes));
+		if (offset == null) return null;
+
+		int length = segment.getInt(offset);
+		byte[] value = new byte[length - RECORD_OVERHEAD - keyBytes.length];
+		ByteBuffer record = segment.duplicate();
+		record.position(offset + KEY_OFFSET + keyBytes.length);
+		record.get(value);
+		return value;
+	}
+
+	/**
+	 * Cache bytes, replacing the ones of the key if any. Encodings which cannot fit in the segment are not cached.
+	 *
+	 * @param key the key of the encoding
+	 * @param value the encoding
+	 */
+	public synchronized void put(EncodedCache.Key key, byte[] value) {
+		checkOpen();
+		byte[] keyBytes = toBytes(key);
+		long length = (long) RECORD_OVERHEAD + keyBytes.length + value.length;
+		if (length > capacity - HEADER_SIZE) return;
+
+		if (end + length > capacity) compact((int) length, capacity * LOW_WATER_MARK);
+
+		int offset = end;
+		ByteBuffer record = segment.duplicate();
+		record.position(offset);
+		record.putInt((int) length).putInt(keyBytes.length).put(keyBytes).put(value);
+		record.putInt(crc(offset, (int) length));
+
+		Integer previous = index.put(ByteBuffer.wrap(keyBytes), offset);
+		if (previous != null) liveBytes -= segment.getInt(previous);
+		liveBytes += length;
+		end = offset + (int) length;
+		// the record only becomes visible once it is completely written
+		segment.putInt(END_OFFSET, end);
+	}
+
+	/**
+	 * Get a cached matrix
+	 *
+	 * @return the matrix of the QR code, or null if it is not cached
+	 */
+	public BitMatrix getMatrix(String payload, int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		byte[] bytes = get(new EncodedCache.Key(payload, version, level, mask, MATRIX_FORMAT, 1));
+		if (bytes == null) return null;
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		BitMatrix matrix = new BitMatrix(buffer.getInt(), buffer.getInt());
+		buffer.asLongBuffer().get(matrix.getWords());
+		return matrix;
+	}
+
+	/**
+	 * Cache a matrix
+	 */
+	public void putMatrix(String payload, int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask,
+			BitMatrix matrix) {
+		long[] words = matrix.getWords();
+		ByteBuffer buffer = ByteBuffer.allocate(8 + words.length * 8);
+		buffer.putInt(matrix.getWidth()).putInt(matrix.getHeight());
+		buffer.asLongBuffer().put(words);
+		put(new EncodedCache.Key(payload, version, level, mask, MATRIX_FORMAT, 1), buffer.array());
+	}
+
+	/**
+	 * Move the live records down, freeing the space of the replaced ones
+	 */
+	public synchronized void compact() {
+		checkOpen();
+		compact(0, capacity);
+	}
+
+	/**
+	 * Write the mapped segment to the disk
+	 */
+	public synchronized void flush() {
+		checkOpen();
+		segment.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel == null) return;
+		segment.force();
+		channel.close();
+		channel = null;
+		segment = null;
+		index.clear();
+	}
+
+	// Getters
+	public int getCapacity() { return capacity; }
+	public synchronized int getUsedBytes() { return end; }
+	public synchronized long getLiveBytes() { return liveBytes; }
+	public synchronized int getEntryCount() { return index.size(); }
+	public synchronized int getCompactionCount() { return compactions; }
+
+	/*
+	 * Move the live records down in the segment, dropping the oldest ones until they and a record of the given
+	 * length fill at most the given size. The records only move down, so each one is copied before being overwritten.
+	 */
+	private void compact(int needed, double size) {
+		List<Map.Entry<ByteBuffer, Integer>> records = new ArrayList<>(index.entrySet());
+		records.sort(Map.Entry.comparingByValue());
+
+		int first = 0;
+		long used = HEADER_SIZE + liveBytes + needed;
+		while (used > size && first < records.size()) {
+			int length = segment.getInt(records.get(first).getValue());
+			used -= length;
+			liveBytes -= length;
+			index.remove(records.get(first++).getKey());
+		}
+
+		segment.putInt(END_OFFSET, HEADER_SIZE);
+		int target = HEADER_SIZE;
+		byte[] buffer = new byte[0];
+		ByteBuffer source = segment.duplicate();
+		ByteBuffer destination = segment.duplicate();
+		for (int i = first; i < records.size(); i++) {
+			int offset = records.get(i).getValue();
+			int length = segment.getInt(offset);
+			if (offset != target) {
+				if (buffer.length < length) buffer = new byte[length];
+				source.position(offset);
+				source.get(buffer, 0, length);
+				destination.position(target);
+				destination.put(buffer, 0, length);
+				index.put(records.get(i).getKey(), target);
+			}
+			target += length;
+		}
+
+		end = target;
+		segment.putInt(END_OFFSET, end);
+		segment.force();
+		compactions++;
+	}
+
+	/*
+	 * Map the segment, creating it if it is empty, and rebuild the index from its records
+	 */
+	private void open() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, size));
+		index.clear();
+		liveBytes = 0;
+
+		if (size == 0) {
+			segment.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(END_OFFSET, HEADER_SIZE);
+			end = HEADER_SIZE;
+			return;
+		}
+		if (segment.getInt(0) != MAGIC || segment.getInt(4) != FORMAT_VERSION) {
+			channel.close();
+			channel = null;
+			throw new IOException("The file " + path + " is not a cache segment.");
+		}
+
+		int written = segment.getInt(END_OFFSET);
+		int offset = HEADER_SIZE;
+		while (offset + RECORD_OVERHEAD <= written) {
+			int length = segment.getInt(offset);
+			if (length < RECORD_OVERHEAD || length > written - offset
+					|| segment.getInt(offset + length - 4) != crc(offset, length)) break;
+
+			int keyLength = segment.getInt(offset + 4);
+			if (keyLength < 0 || keyLength > length - RECORD_OVERHEAD) break;
+			byte[] keyBytes = new byte[keyLength];
+			ByteBuffer record = segment.duplicate();
+			record.position(offset + KEY_OFFSET);
+			record.get(keyBytes);
+
+			Integer previous = index.put(ByteBuffer.wrap(keyBytes), offset);
+			if (previous != null) liveBytes -= segment.getInt(previous);
+			liveBytes += length;
+			offset += length;
+		}
+		end = offset;
+		segment.putInt(END_OFFSET, end);
+	}
+
+	private int crc(int offset, int length) {
+		ByteBuffer record = segment.duplicate();
+		record.limit(offset + length - 4).position(offset + 4);
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		return (int) crc.getValue();
+	}
+
+	private void checkOpen() {
+		if (channel == null)
+			throw new IllegalStateException("The cache is closed.");
+	}
+
+	private static byte[] toBytes(EncodedCache.Key key) {
+		return (key.getPayload() + '\0' + key.getVersion() + '\0' + key.getLevel() + '\0' + key.getMask() + '\0'
+				+ key.getFormat() + '\0' + key.getScale()).getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,268 @@
+package qrcode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache of encoded QR codes (PNG, SVG, ...), bounded by the total size of the cached bytes.
+ *
+ * The cache is split in segments, each one being a LinkedHashMap in access order guarded by its own lock and
+ * holding an equal part of the budget. When a segment exceeds its part, its least recently used entries are
+ * evicted, so that hot payloads stay in the cache no matter how many cold ones go through it. Loading an encoding
+ * happens outside of the locks: two threads missing the same key at the same time may both encode it, which is
+ * harmless since the encodings are identical.
+ *
+ * The cached arrays are shared with every caller and must not be modified. For instance:
+ *
+ * 		EncodedCache.Key key = new EncodedCache.Key(url, version, level, mask, "png", 10);
+ * 		byte[] png = cache.computeIfAbsent(key, k -> encode(k));
+ */
+public final class EncodedCache {
+
+	/**
+	 * Default amount of segments, which bounds the amount of threads accessing the cache without contention
+	 */
+	public static final int DEFAULT_SEGMENTS = 16;
+
+	/*
+	 * Estimated size of an entry without its payload and its bytes: the key, the node of the map and the array header
+	 */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final Segment[] segments;
+	private final long maxBytes;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes the budget of the cache in bytes
+	 */
+	public EncodedCache(long maxBytes) {
+		this(maxBytes, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param maxBytes the budget of the cache in bytes, split equally between the segments
+	 * @param segments the amount of segments, rounded up to a power of two
+	 */
+	public EncodedCache(long maxBytes, int segments) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("The budget of the cache must be positive.");
+		if (segments < 1)
+			throw new IllegalArgumentException("The cache must have at least one segment.");
+
+		int count = 1;
+		while (count < segments) count <<= 1;
+		this.maxBytes = maxBytes;
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new Segment(Math.max(1, maxBytes / count));
+		}
+	}
+
+	/**
+	 * Get cached bytes
+	 *
+	 * @param key the key of the encoding
+	 * @return the cached bytes, or null if the key is not cached
+	 */
+	public byte[] get(Key key) {
+		byte[] bytes = segmentFor(key).get(key);
+		(bytes == null ? misses : hits).increment();
+		return bytes;
+	}
+
+	/**
+	 * Cache bytes, replacing the ones of the key if any. Encodings larger than a segment are not cached.
+	 *
+	 * @param key the key of the encoding
+	 * @param bytes the encoding, which must not be modified afterwards
+	 */
+	public void put(Key key, byte[] bytes) {
+		Objects.requireNonNull(bytes);
+		segmentFor(key).put(key, bytes);
+	}
+
+	/**
+	 * Get cached bytes, encoding and caching them if the key is not cached
+	 *
+	 * @param key the key of the encoding
+	 * @param loader the function encoding a key, called outside of the locks of the cache
+	 * @return the bytes of the key
+	 */
+	public byte[] computeIfAbsent(Key key, Function<? super Key, byte[]> loader) {
+		byte[] bytes = get(key);
+		if (bytes == null) {
+			bytes = loader.apply(key);
+			put(key, bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Remove a key from the cache
+	 *
+	 * @param key the key of the encoding
+	 */
+	public void invalidate(Key key) {
+		segmentFor(key).remove(key);
+	}
+
+	/**
+	 * Remove every key from the cache. Evictions are not counted.
+	 */
+	public void clear() {
+		for (Segment segment : segments) segment.clear();
+	}
+
+	// Getters
+	public long getMaxBytes() { return maxBytes; }
+	public long getHitCount() { return hits.sum(); }
+	public long getMissCount() { return misses.sum(); }
+	public long getEvictionCount() { return evictions.sum(); }
+
+	/**
+	 * @return the estimated size of the cached entries in bytes
+	 */
+	public long getSize() {
+		long size = 0;
+		for (Segment segment : segments) size += segment.getSize();
+		return size;
+	}
+
+	/**
+	 * @return the amount of cached entries
+	 */
+	public int getEntryCount() {
+		int count = 0;
+		for (Segment segment : segments) count += segment.getEntryCount();
+		return count;
+	}
+
+	private Segment segmentFor(Key key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ hash >>> 16) & (segments.length - 1)];
+	}
+
+	private static long weight(Key key, byte[] bytes) {
+		return ENTRY_OVERHEAD + 2L * key.payload.length() + bytes.length;
+	}
+
+	/*
+	 * Part of the cache guarded by its own lock, evicting its least recently used entries beyond its budget
+	 */
+	private final class Segment {
+
+		private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private final long budget;
+		private long size;
+
+		Segment(long budget) {
+			this.budget = budget;
+		}
+
+		synchronized byte[] get(Key key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(Key key, byte[] bytes) {
+			long weight = weight(key, bytes);
+			if (weight > budget) {
+				remove(key);
+				return;
+			}
+
+			byte[] previous = entries.put(key, bytes);
+			if (previous != null) size -= weight(key, previous);
+			size += weight;
+
+			Iterator<Map.Entry<Key, byte[]>> eldest = entries.entrySet().iterator();
+			while (size > budget) {
+				Map.Entry<Key, byte[]> entry = eldest.next();
+				size -= weight(entry.getKey(), entry.getValue());
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+
+		synchronized void remove(Key key) {
+			byte[] previous = entries.remove(key);
+			if (previous != null) size -= weight(key, previous);
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			size = 0;
+		}
+
+		synchronized long getSize() { return size; }
+		synchronized int getEntryCount() { return entries.size(); }
+	}
+
+	/**
+	 * Everything an encoding depends on: the payload, the symbol and the output settings
+	 */
+	public static final class Key {
+
+		private final String payload;
+		private final int version;
+		private final Extensions.QRCodeInfos.CorrectionLevel level;
+		private final int mask;
+		private final String format;
+		private final int scale;
+		private final int hash;
+
+		/**
+		 * @param payload the encoded string
+		 * @param version the version of the symbol
+		 * @param level the error correction level of the symbol
+		 * @param mask the mask id, or -1 if it is selected by the encoder
+		 * @param format the name of the output format, such as "png" or "svg"
+		 * @param scale the size of a module in the output
+		 */
+		public Key(String payload, int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask,
+				String format, int scale) {
+			this.payload = Objects.requireNonNull(payload);
+			this.version = version;
+			this.level = Objects.requireNonNull(level);
+			this.mask = mask;
+			this.format = Objects.requireNonNull(format);
+			this.scale = scale;
+			this.hash = Objects.hash(payload, version, level, mask, format, scale);
+		}
+
+		// Getters
+		public String getPayload() { return payload; }
+		public int getVersion() { return version; }
+		public Extensions.QRCodeInfos.CorrectionLevel getLevel() { return level; }
+		public int getMask() { return mask; }
+		public String getFormat() { return format; }
+		public int getScale() { return scale; }
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+
+			Key key = (Key) o;
+			return hash == key.hash && version == key.version && mask == key.mask && scale == key.scale
+					&& level == key.level && payload.equals(key.payload) && format.equals(key.format);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return "Key{payload=" + payload + ", version=" + version + ", level=" + level + ", mask=" + mask + ", format=" + format
+					+ ", scale=" + scale + "}";
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package qrcode;
+
+import reedsolomon.ErrorCorrectionEncoding;
+
+/**
+ * Scratch buffers of the encoding of QR codes, sized once for the largest version in use and reused by every
+ * rendering made with MatrixConstruction#renderInto(EncoderContext, int, String).
+ *
+ * The codewords are encoded in place in arrays of the context, placed directly on a packed matrix of the version
+ * (without going through a boolean[] bitstream nor an int[][] matrix), and the mask is selected on candidates
+ * which also belong to the context. The matrices of a version are created the first time the version is rendered,
+ * after which rendering a QR code allocates nothing (unless the PARALLEL strategy is used, as it needs its own
+ * matrices per candidate).
+ *
+ * A context is not thread-safe: it can either be kept per thread (see perThread()) or taken from a pool for the
+ * time of a rendering. The selections returned by the renderings belong to the context and are overwritten by the
+ * next rendering of the same version.
+ *
+ * @see MatrixConstruction#renderInto(EncoderContext, int, String)
+ */
+public final class EncoderContext {
+
+	private static final ThreadLocal<EncoderContext> PER_THREAD = ThreadLocal.withInitial(() -> new EncoderContext(40));
+
+	private final int maxVersion;
+	private final int[] message;
+	private final int[] errorCorrection;
+	private final int[] codewords;
+	private final Extensions.QRCodeInfos[][] infos;
+	private final BitMatrix[] bases;
+	private final MaskSelector.Candidates[] candidates;
+
+	/**
+	 * Create a context for the QR codes up to a version
+	 *
+	 * @param maxVersion the largest version which will be rendered with the context, between 1 and 40 included
+	 */
+	public EncoderContext(int maxVersion) {
+		if (maxVersion < 1 || maxVersion > 40)
+			throw new IllegalArgumentException("QR Code versions must be within 1 and 40 included.");
+
+		this.maxVersion = maxVersion;
+		// the amount of codewords of a version is the same for every correction level
+		int codewordsLength =
+				new Extensions.QRCodeInfos(maxVersion, Extensions.QRCodeInfos.CorrectionLevel.LOW).getCodeWordsLength();
+		this.message = new int[codewordsLength];
+		this.errorCorrection = new int[codewordsLength];
+		this.codewords = new int[codewordsLength];
+
+		this.infos = new Extensions.QRCodeInfos[Extensions.QRCodeInfos.CorrectionLevel.values().length][maxVersion + 1];
+		this.bases = new BitMatrix[maxVersion + 1];
+		this.candidates = new MaskSelector.Candidates[maxVersion + 1];
+	}
+
+	/**
+	 * @return the context of the current thread, which supports every version
+	 */
+	public static EncoderContext perThread() {
+		return PER_THREAD.get();
+	}
+
+	// Getters
+	public int getMaxVersion() { return maxVersion; }
+
+	/**
+	 * Encode a payload in byte mode, the same way as DataEncoding#byteModeEncoding(String, int), in the codewords
+	 * of the context.
+	 *
+	 * @param payload the string to encode in ISO-8859-1, truncated to the capacity of the version
+	 * @param version the version of the QR code
+	 * @param level the error correction level of the QR code
+	 * @return the amount of codewords written
+	 */
+	int encode(String payload, int version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		if (version > maxVersion)
+			throw new IllegalArgumentException("The context only supports versions up to " + maxVersion + ".");
+
+		Extensions.QRCodeInfos qrCodeInfos = infos[level.ordinal()][version];
+		if (qrCodeInfos == null) {
+			qrCodeInfos = new Extensions.QRCodeInfos(version, level);
+			infos[level.ordinal()][version] = qrCodeInfos;
+		}
+
+		int dataLength = qrCodeInfos.getDataLength();
+		int length = addInformations(payload, version < 10 ? 2 : 3, qrCodeInfos.getMaxInputLength());
+
+		// padding bytes, as in DataEncoding#fillSequence
+		for (int i = length; i < dataLength; i++) {
+			message[i] = (i - length) % 2 == 0 ? 0b11101100 : 0b00010001;
+		}
+
+		return addErrorCorrection(qrCodeInfos);
+	}
+
+	/**
+	 * Get the candidates of the masks of a version, with the codewords of the context placed on them
+	 *
+	 * @param template the template of the version
+	 * @param level the error correction level of the QR code
+	 * @param codewordsLength the amount of codewords to place
+	 * @param deadline the System.nanoTime() value after which the selection should be done
+	 * @return the candidates of the context for the version
+	 */
+	MaskSelector.Candidates candidates(VersionTemplate template, Extensions.QRCodeInfos.CorrectionLevel level,
+									   int codewordsLength, long deadline) {
+		int version = template.getVersion();
+		if (candidates[version] == null) {
+			bases[version] = new BitMatrix(template.getSize());
+			candidates[version] = new MaskSelector.Candidates(template, new MaskSelector.Selection(
+					version, -1, -1, null, new BitMatrix(template.getSize())));
+		}
+
+		// placement of the bits of the codewords, most significant bit first
+		BitMatrix base = bases[version];
+		base.clear();
+		long[] words = base.getWords();
+		int[] order = template.getPlacementOrder();
+		for (int i = 0; i < codewordsLength; i++) {
+			int codeword = codewords[i];
+			for (int bit = 0; bit < 8; bit++) {
+				if ((codeword >> (7 - bit) & 1) != 0) {
+					int module = order[i * 8 + bit];
+					words[module >>> 6] |= 1L << module;
+				}
+			}
+		}
+		base.or(template.getFunctionPatterns());
+
+		return candidates[version].reset(level, base, deadline);
+	}
+
+	/*
+	 * Write the header and the ISO-8859-1 bytes of the payload in the message, as in
+	 * Extensions#addInformations(int[], QRCodeInfos), and return the length of the message.
+	 *
+	 * The bytes are first written after the header and then shifted by 4 bits in place.
+	 */
+	private int addInformations(String payload, int headerLength, int maxLength) {
+		int inputLength = 0;
+		for (int i = 0; i < payload.length() && inputLength < maxLength; i++) {
+			char c = payload.charAt(i);
+			// like String#getBytes, an unmappable character (or surrogate pair) is replaced by a question mark
+			if (Character.isHighSurrogate(c) && i + 1 < payload.length() && Character.isLowSurrogate(payload.charAt(i + 1)))
+				i++;
+			message[headerLength + inputLength++] = c <= 0xFF ? c : '?';
+		}
+
+		int first = inputLength == 0 ? 0 : message[headerLength];
+		if (headerLength == 2) {
+			message[0] = (0b0100 << 4) + (inputLength >> 4);
+		} else {
+			message[0] = (0b0100 << 4) + (inputLength >> 12);
+			message[1] = (inputLength & 0xFF0) >> 4;
+		}
+		message[headerLength - 1] = ((inputLength & 0x0F) << 4) + (first >> 4);
+
+		// the byte i - 1 is replaced by its low bits followed by the high bits of the byte i
+		for (int i = 1; i < inputLength; i++) {
+			int index = headerLength + i - 1;
+			message[index] = ((message[index] & 0x0F) << 4) + (message[index + 1] >> 4);
+		}
+		if (inputLength > 0) {
+			message[headerLength + inputLength - 1] = (message[headerLength + inputLength - 1] & 0x0F) << 4;
+		}
+
+		return inputLength + headerLength;
+	}
+
+	/*
+	 * Compute the error correction of every block and interleave the blocks in the codewords, as in
+	 * Extensions#addErrorCorrection(int[], QRCodeInfos). Return the amount of codewords.
+	 */
+	private int addErrorCorrection(Extensions.QRCodeInfos qrCodeInfos) {
+		int blocks = qrCodeInfos.getErrorCorrectionBlocks().getAmountBlocks();
+		int codewordsLength = qrCodeInfos.getCodeWordsLength();
+		int dataBytesG1 = qrCodeInfos.getDataLength() / blocks;
+		int ecBytes = codewordsLength / blocks - dataBytesG1;
+		// the blocks of the second group have one more data byte than the ones of the first group
+		int blocksG1 = blocks - codewordsLength % blocks;
+
+		for (int b = 0; b < blocks; b++) {
+			ErrorCorrectionEncoding.encode(message, blockStart(b, dataBytesG1, blocksG1),
+					b < blocksG1 ? dataBytesG1 : dataBytesG1 + 1, errorCorrection, b * ecBytes, ecBytes);
+		}
+
+		int k = 0;
+		for (int i = 0; i <= dataBytesG1; i++) {
+			for (int b = 0; b < blocks; b++) {
+				if (i < dataBytesG1 || b >= blocksG1) codewords[k++] = message[blockStart(b, dataBytesG1, blocksG1) + i];
+			}
+		}
+		for (int i = 0; i < ecBytes; i++) {
+			for (int b = 0; b < blocks; b++) {
+				codewords[k++] = errorCorrection[b * ecBytes + i];
+			}
+		}
+
+		return k;
+	}
+
+	private static int blockStart(int block, int dataBytesG1, int blocksG1) {
+		return block * dataBytesG1 + Math.max(0, block - blocksG1);
+	}
+}
@@ -2,9 +2,18 @@ package qrcode;
 
 import java.awt.BorderLayout;
 import java.awt.Font;
+import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -33,34 +42,22 @@ public final class Helpers {
 	
 	/**
 	 * compare a matrix loaded from file with a 2D-array given in arguments.
+	 * The differences are shown in a new window, unless the environment is headless.
 	 * @param matrix the 2-dimensional array
 	 * @param imagePath the path of the image to compare with the matrix
 	 * @return true if the 2 images are similar, false otherwise
 	 */
 	public static boolean compare(int [][] matrix,String imagePath) {
 		int[][] expected= readMatrix(imagePath);
-		if(expected.length != matrix.length || expected.length!=expected[0].length || matrix.length!=matrix[0].length) {
-			throw new IllegalArgumentException("The size of the two QR code does not match: matrix:"+matrix.length+"  image:"+expected.length);
-		}
-		int[][] diff = new int[expected.length][expected.length];
-		boolean similar = true;
-		for(int x=0;x<matrix.length;x++) {
-			for(int y=0;y<matrix.length;y++) {
-				if(matrix[x][y]!=expected[x][y]) {
-					diff[x][y] = RED;
-					similar = false;
-				}else {
-					if(expected[x][y]== -1) {
-						diff[x][y] = GREEN_WHITE;
-					}else if(expected[x][y]== -16777216){
-						diff[x][y] = GREEN_BLACK;
-					}
-				}
-			}
+		MatrixDiff result = MatrixDiff.of(matrix, expected);
+		boolean similar = result.isSimilar();
+		if (GraphicsEnvironment.isHeadless()) {
+			return similar;
 		}
+
 		BufferedImage imageExpected = scale(expected, SCALE, BORDER/2);
 		BufferedImage imageGiven = scale(matrix, SCALE, BORDER/2);
-		BufferedImage imagediff = scale(diff, SCALE, BORDER/2);
+		BufferedImage imagediff = scale(diffMatrix(expected, result), SCALE, BORDER/2);
 		
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
@@ -115,6 +112,56 @@ public final class Helpers {
 		
 	}
 
+	/**
+	 * Compare a matrix with an image of the images directory, without opening any window
+	 * 
+	 * @param matrix
+	 *            the 2-dimensional array
+	 * @param imagePath
+	 *            the path of the image to compare with the matrix
+	 * @return the differences between the matrix and the image
+	 */
+	public static MatrixDiff diff(int[][] matrix, String imagePath) {
+		return diff(matrix, imagePath, null);
+	}
+
+	/**
+	 * Compare a matrix with an image of the images directory, without opening any window, and write the image of
+	 * the differences (in red) if there are any
+	 * 
+	 * @param matrix
+	 *            the 2-dimensional array
+	 * @param imagePath
+	 *            the path of the image to compare with the matrix
+	 * @param diffImage
+	 *            the file to write the image of the differences to, or null
+	 * @return the differences between the matrix and the image
+	 */
+	public static MatrixDiff diff(int[][] matrix, String imagePath, File diffImage) {
+		int[][] expected = readMatrix(imagePath);
+		MatrixDiff result = MatrixDiff.of(matrix, expected);
+		if (diffImage != null && !result.isSimilar()) {
+			try {
+				ImageIO.write(scale(diffMatrix(expected, result), SCALE, BORDER/2), "png", diffImage);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Compare matrices with their images of the images directory in parallel, without opening any window
+	 * 
+	 * @param matrices
+	 *            the 2-dimensional arrays, by path of their image
+	 * @return the differences between the matrices and their images, by path of the image
+	 */
+	public static Map<String, MatrixDiff> diffAll(Map<String, int[][]> matrices) {
+		return matrices.entrySet().parallelStream()
+				.collect(Collectors.toMap(Map.Entry::getKey, entry -> diff(entry.getValue(), entry.getKey())));
+	}
+
 	/**
 	 * Shows a matrix in a new window. The matrix is scaled for visualization
 	 * 
@@ -164,6 +211,93 @@ public final class Helpers {
 		write(name, matrixToImage(matrix));
 	}
 	
+	/**
+	 * Render a symbol in a black and white image, written directly in its data buffer
+	 * 
+	 * @param symbol
+	 *            the modules of the symbol
+	 * @param moduleSize
+	 *            the size of a module in pixels
+	 * @param quietZone
+	 *            the size of the quiet zone in modules
+	 * @param imageType
+	 *            BufferedImage.TYPE_BYTE_BINARY or BufferedImage.TYPE_BYTE_GRAY
+	 * @return the image of the symbol
+	 */
+	public static BufferedImage render(ModuleSource symbol, int moduleSize, int quietZone, int imageType) {
+		return render(symbol, new int[] {moduleSize}, quietZone, imageType)[0];
+	}
+
+	/**
+	 * Render a symbol in several black and white images of different scales at once. Every row of modules is read
+	 * once for all the images, then expanded to a scanline of each image, which is copied down the rows of the
+	 * module with System.arraycopy.
+	 * 
+	 * @param symbol
+	 *            the modules of the symbol
+	 * @param moduleSizes
+	 *            the size of a module in pixels for each image
+	 * @param quietZone
+	 *            the size of the quiet zone in modules
+	 * @param imageType
+	 *            BufferedImage.TYPE_BYTE_BINARY or BufferedImage.TYPE_BYTE_GRAY
+	 * @return the images of the symbol, in the order of the module sizes
+	 */
+	public static BufferedImage[] render(ModuleSource symbol, int[] moduleSizes, int quietZone, int imageType) {
+		if (imageType != BufferedImage.TYPE_BYTE_BINARY && imageType != BufferedImage.TYPE_BYTE_GRAY) {
+			throw new IllegalArgumentException("The image type must be TYPE_BYTE_BINARY or TYPE_BYTE_GRAY");
+		}
+		if (quietZone < 0) {
+			throw new IllegalArgumentException("The quiet zone must not be negative");
+		}
+
+		boolean binary = imageType == BufferedImage.TYPE_BYTE_BINARY;
+		BufferedImage[] images = new BufferedImage[moduleSizes.length];
+		byte[][] pixels = new byte[moduleSizes.length][];
+		int[] strides = new int[moduleSizes.length];
+
+		for (int i = 0; i < moduleSizes.length; i++) {
+			int scale = moduleSizes[i];
+			if (scale < 1) {
+				throw new IllegalArgumentException("The module sizes must be positive");
+			}
+			int width = (symbol.getWidth() + 2 * quietZone) * scale;
+			int height = (symbol.getHeight() + 2 * quietZone) * scale;
+			images[i] = new BufferedImage(width, height, imageType);
+
+			WritableRaster raster = images[i].getRaster();
+			pixels[i] = ((DataBufferByte) raster.getDataBuffer()).getData();
+			strides[i] = binary ? ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride()
+					: ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+
+			// light everywhere, only the dark modules are drawn afterwards
+			Arrays.fill(pixels[i], (byte) 0xFF);
+		}
+
+		long[] row = new long[(symbol.getWidth() + 63) >>> 6];
+		for (int y = 0; y < symbol.getHeight(); y++) {
+			symbol.getRow(y, row);
+			for (int i = 0; i < images.length; i++) {
+				int scale = moduleSizes[i];
+				int start = (y + quietZone) * scale * strides[i];
+				drawRow(row, symbol.getWidth(), pixels[i], start, quietZone * scale, scale, binary);
+				for (int j = 1; j < scale; j++) {
+					System.arraycopy(pixels[i], start, pixels[i], start + j * strides[i], strides[i]);
+				}
+			}
+		}
+		return images;
+	}
+
+	/**
+	 * Render a matrix in a black and white image
+	 * 
+	 * @see Helpers#render(ModuleSource, int, int, int)
+	 */
+	public static BufferedImage render(int[][] matrix, int moduleSize, int quietZone, int imageType) {
+		return render(BitMatrix.fromMatrix(matrix), moduleSize, quietZone, imageType);
+	}
+
 	/*
 	 * ================================================ 
 	 * 				PRIVATE METHODS
@@ -182,9 +316,11 @@ public final class Helpers {
 	private static int[][] imageToMatrix(BufferedImage image) {
 	
 		int[][] matrix = new int[image.getWidth()][image.getHeight()];
-		for (int i = 0; i < image.getWidth(); i++) {
-			for (int j = 0; j < image.getHeight(); j++) {
-				matrix[i][j] = image.getRGB(i, j);
+		int[] row = new int[image.getWidth()];
+		for (int j = 0; j < image.getHeight(); j++) {
+			image.getRGB(0, j, row.length, 1, row, 0, row.length);
+			for (int i = 0; i < row.length; i++) {
+				matrix[i][j] = row[i];
 			}
 		}
 		return matrix;
@@ -259,36 +395,98 @@ public final class Helpers {
 		}
 	}
 	
+	/**
+	 * Color the modules of an expected matrix: red if they differ, green otherwise
+	 * 
+	 * @param expected
+	 *            the expected matrix
+	 * @param result
+	 *            the differences with the expected matrix
+	 * @return the matrix of the differences
+	 */
+	private static int[][] diffMatrix(int[][] expected, MatrixDiff result) {
+		int[][] diff = new int[expected.length][expected[0].length];
+		for (int x = 0; x < expected.length; x++) {
+			for (int y = 0; y < expected[0].length; y++) {
+				if (expected[x][y] == -1) {
+					diff[x][y] = GREEN_WHITE;
+				} else if (expected[x][y] == -16777216) {
+					diff[x][y] = GREEN_BLACK;
+				}
+			}
+		}
+		for (int i = 0; i < result.getCount(); i++) {
+			diff[result.getX(i)][result.getY(i)] = RED;
+		}
+		return diff;
+	}
+
+	/**
+	 * Draw the dark modules of a packed row on a light scanline
+	 * 
+	 * @param row
+	 *            the packed row of modules
+	 * @param modules
+	 *            the amount of modules of the row
+	 * @param pixels
+	 *            the data of the image
+	 * @param start
+	 *            the index of the scanline in the data
+	 * @param border
+	 *            the size of the quiet zone in pixels
+	 * @param scale
+	 *            the size of a module in pixels
+	 * @param binary
+	 *            whether the pixels are packed bits (MSB first) or bytes
+	 */
+	private static void drawRow(long[] row, int modules, byte[] pixels, int start, int border, int scale,
+			boolean binary) {
+		for (int x = 0; x < modules; x++) {
+			if ((row[x >>> 6] & 1L << x) == 0) {
+				continue;
+			}
+			int first = border + x * scale;
+			if (binary) {
+				for (int pixel = first; pixel < first + scale; pixel++) {
+					pixels[start + (pixel >>> 3)] &= ~(0x80 >>> (pixel & 7));
+				}
+			} else {
+				Arrays.fill(pixels, start + first, start + first + scale, (byte) 0);
+			}
+		}
+	}
+
 	private static BufferedImage scale(int[][] image, int scale, int borderSize) {
 		return reshape(Helpers.matrixToImage(image), scale, borderSize);
 	}
 	private static BufferedImage reshape(BufferedImage image, int scale, int borderSize) {
-		if (image.getHeight() != image.getWidth()) {
-			throw new IllegalArgumentException("The image must be squared");
-		}
-		int previousSize = image.getWidth();
-		int size = previousSize * scale + borderSize * 2;
-		BufferedImage ehancedIm = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		int previousWidth = image.getWidth();
+		int previousHeight = image.getHeight();
+		int width = previousWidth * scale + borderSize * 2;
+		int height = previousHeight * scale + borderSize * 2;
+		BufferedImage ehancedIm = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
 		/*
 		 * Border
 		 */
-		for (int i = 0; i < size; i++) {
+		for (int i = 0; i < width; i++) {
 			for (int j = 0; j < borderSize; j++) {
 				ehancedIm.setRGB(i, j, BACKGROUND_COLOR);
-				ehancedIm.setRGB(i, j + size - borderSize, BACKGROUND_COLOR);
-				if (i >= borderSize && i < size - borderSize) {
-					ehancedIm.setRGB(j, i, BACKGROUND_COLOR);
-					ehancedIm.setRGB(j + size - borderSize, i, BACKGROUND_COLOR);
-				}
+				ehancedIm.setRGB(i, j + height - borderSize, BACKGROUND_COLOR);
+			}
+		}
+		for (int i = borderSize; i < height - borderSize; i++) {
+			for (int j = 0; j < borderSize; j++) {
+				ehancedIm.setRGB(j, i, BACKGROUND_COLOR);
+				ehancedIm.setRGB(j + width - borderSize, i, BACKGROUND_COLOR);
 			}
 		}
 
 		/*
 		 * Scaling
 		 */
-		for (int x = 0; x < previousSize; x++) {
-			for (int y = 0; y < previousSize; y++) {
+		for (int x = 0; x < previousWidth; x++) {
+			for (int y = 0; y < previousHeight; y++) {
 
 				int color = image.getRGB(x, y);
 				int startX = x * scale + borderSize;
@@ -0,0 +1,64 @@
+package qrcode;
+
+/**
+ * View of a QR code computing its modules on demand: a module is dark if it is a dark module of the function
+ * patterns or of the format information, or if it is a data module whose bit differs from the mask.
+ *
+ * Only the placed data bits belong to the view, everything else is shared with the template of the version.
+ * Rows are gathered word by word from the packed lines, one bit per line.
+ *
+ * @see ModuleSource#of(int, boolean[], int)
+ */
+final class LazySymbol implements ModuleSource {
+
+	private final int size;
+	private final int wordsPerLine;
+	private final long[] functionPatterns;
+	private final long[] format;
+	private final long[] mask;
+	private final long[] data;
+
+	/**
+	 * @param template the template of the version
+	 * @param level the error correction level of the QR code
+	 * @param mask the mask id, between 0 and 7 included
+	 * @param data the data bits placed on the data region, see MatrixConstruction#placeData(BitMatrix, boolean[])
+	 */
+	LazySymbol(VersionTemplate template, Extensions.QRCodeInfos.CorrectionLevel level, int mask, BitMatrix data) {
+		this.size = template.getSize();
+		this.wordsPerLine = data.getWordsPerLine();
+		this.functionPatterns = template.getFunctionPatterns().getWords();
+		this.format = template.getFormatPlane(level, mask).getWords();
+		this.mask = template.getMaskPlane(mask).getWords();
+		this.data = data.getWords();
+	}
+
+	@Override
+	public int getWidth() { return size; }
+
+	@Override
+	public int getHeight() { return size; }
+
+	@Override
+	public boolean isDark(int x, int y) {
+		int index = x * wordsPerLine + (y >>> 6);
+		return ((functionPatterns[index] | format[index] | data[index] ^ mask[index]) & 1L << y) != 0;
+	}
+
+	@Override
+	public long[] getRow(int y, long[] row) {
+		int words = (size + 63) >>> 6;
+		if (row == null) row = new long[words];
+
+		int offset = y >>> 6;
+		for (int w = 0, x = 0; w < words; w++) {
+			long bits = 0;
+			for (int end = Math.min(size, x + 64); x < end; x++, offset += wordsPerLine) {
+				long modules = functionPatterns[offset] | format[offset] | data[offset] ^ mask[offset];
+				bits |= (modules >>> y & 1L) << x;
+			}
+			row[w] = bits;
+		}
+		return row;
+	}
+}
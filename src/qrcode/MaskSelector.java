@@ -0,0 +1,508 @@
+package qrcode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selection of the mask giving the least penalty for a QR code.
+ *
+ * Instead of rendering the whole QR code once per mask, the data is placed a single time (without any mask) on top
+ * of the precomputed function patterns of the version. Each masked candidate is then derived from it by XOR-ing the
+ * bitplane of the mask and adding the format information of the mask, and the winning candidate is returned
+ * directly so that it never has to be rendered again. The candidates are scored on their packed form.
+ *
+ * How the candidates are compared is decided by a strategy, which allows to trade the quality of the chosen mask
+ * (its penalty) for speed:
+ *      - EXHAUSTIVE:  the best mask, found with a branch-and-bound over the full penalty of the 8 candidates. The
+ *                     candidates are ordered with the cheap rules of the penalty (which predict the full score
+ *                     well) so that a strong bound is found early, and the evaluation of every following candidate
+ *                     stops as soon as its partial score cannot beat the best one anymore
+ *      - SAMPLED:     the best mask according to the penalty of one line and column out of two
+ *      - CHEAP_RULES: the best mask according to the rules N2 and N4 only
+ *      - ADAPTIVE:    EXHAUSTIVE until the time budget is nearly spent, then falls back to CHEAP_RULES for the
+ *                     candidates which have not been evaluated yet
+ *      - PARALLEL:    the same mask as EXHAUSTIVE, with the 8 candidates scored concurrently on a shared pool
+ *                     (sharing the best penalty found so far as bound). Below PARALLEL_MIN_VERSION, the
+ *                     candidates are too small to be worth the hand-off and EXHAUSTIVE runs instead
+ * Every selection reports the strategy which actually ran and the full penalty of the chosen mask, so that the
+ * quality cost of the faster strategies can be tracked.
+ *
+ * @see VersionTemplate
+ * @see PenaltyEvaluator
+ */
+public final class MaskSelector {
+
+	/**
+	 * Interface declaration for the mask selection strategies
+	 */
+	public interface Strategy {
+		/**
+		 * Choose a mask among the candidates of a QR code
+		 *
+		 * @param candidates the 8 masked candidates of the QR code
+		 * @return the selection made with candidates.selection(...)
+		 */
+		Selection select(Candidates candidates);
+
+		/**
+		 * @return the name of the strategy, as reported in the selections
+		 */
+		String name();
+	}
+
+	/**
+	 * Hook notified each time a mask has been selected, for example to log the chosen masks.
+	 */
+	public interface Listener {
+		void maskSelected(Selection selection);
+	}
+
+	/**
+	 * The strategy used when no strategy is explicitly given (e.g: by MatrixConstruction#findBestMasking).
+	 */
+	public static Strategy STRATEGY = Strategies.EXHAUSTIVE;
+
+	/**
+	 * The time budget given to the ADAPTIVE strategy when no budget is explicitly given, in nanoseconds.
+	 */
+	public static long TIME_BUDGET = 1_000_000;
+
+	/**
+	 * The pool on which the PARALLEL strategy scores the candidates.
+	 */
+	public static ExecutorService POOL = ForkJoinPool.commonPool();
+
+	/**
+	 * The smallest version for which the PARALLEL strategy scores the candidates concurrently.
+	 */
+	public static int PARALLEL_MIN_VERSION = 15;
+
+	/**
+	 * The listener notified of every mask selection, null (the default) to not notify anything.
+	 */
+	public static Listener LISTENER = null;
+
+	/*
+	 * Only one line (and column) out of SAMPLING_STEP is evaluated by the SAMPLED strategy
+	 */
+	private static final int SAMPLING_STEP = 2;
+
+	/**
+	 * The mask selection strategies, see the documentation of the class
+	 */
+	public enum Strategies implements Strategy {
+		EXHAUSTIVE {
+			public Selection select(Candidates candidates) {
+				int mask = -1;
+				int penalty = -1;
+				for (int m : candidates.predictedOrder()) {
+					int bound = candidates.bound(m, mask, penalty);
+					if (candidates.cheapPenalty(m) > bound) continue;
+
+					int p = candidates.penalty(m, bound);
+					if (p <= bound) {
+						mask = m;
+						penalty = p;
+					}
+				}
+				return candidates.selection(mask, penalty, this);
+			}
+		},
+		SAMPLED {
+			public Selection select(Candidates candidates) {
+				int mask = -1;
+				int estimation = -1;
+				for (int m = 0; m <= 7; m++) {
+					int e = candidates.sampledPenalty(m, SAMPLING_STEP);
+					if (e < estimation || estimation == -1) {
+						mask = m;
+						estimation = e;
+					}
+				}
+				return candidates.selection(mask, candidates.penalty(mask, Integer.MAX_VALUE), this);
+			}
+		},
+		CHEAP_RULES {
+			public Selection select(Candidates candidates) {
+				// the predicted order is stable, so on equal penalties the lowest mask comes first
+				int mask = candidates.predictedOrder()[0];
+				return candidates.selection(mask, candidates.penalty(mask, Integer.MAX_VALUE), this);
+			}
+		},
+		ADAPTIVE {
+			public Selection select(Candidates candidates) {
+				int mask = -1;
+				int penalty = -1;
+				long slowestEvaluation = 0;
+				Strategy used = EXHAUSTIVE;
+
+				for (int m : candidates.predictedOrder()) {
+					long start = System.nanoTime();
+					// stop once there is not enough time left for another full evaluation, the candidates left
+					// have only been compared with the cheap rules
+					if (mask != -1 && candidates.getDeadline() - start < slowestEvaluation) {
+						used = CHEAP_RULES;
+						break;
+					}
+
+					int bound = candidates.bound(m, mask, penalty);
+					if (candidates.cheapPenalty(m) > bound) continue;
+
+					int p = candidates.penalty(m, bound);
+					if (p <= bound) {
+						mask = m;
+						penalty = p;
+					}
+					slowestEvaluation = Math.max(slowestEvaluation, System.nanoTime() - start);
+				}
+				return candidates.selection(mask, penalty, used);
+			}
+		},
+		PARALLEL {
+			public Selection select(Candidates candidates) {
+				if (candidates.getVersion() < PARALLEL_MIN_VERSION) return EXHAUSTIVE.select(candidates);
+
+				// the bound only ever decreases to the best penalty, so no mask with the best penalty can be pruned
+				AtomicInteger bestPenalty = new AtomicInteger(Integer.MAX_VALUE);
+				List<Callable<Integer>> tasks = new ArrayList<>(8);
+				for (int m = 0; m <= 7; m++) {
+					int mask = m;
+					tasks.add(() -> {
+						int bound = bestPenalty.get();
+						int p = candidates.isolatedPenalty(mask, bound);
+						if (p > bound) return -1;
+						bestPenalty.accumulateAndGet(p, Math::min);
+						return p;
+					});
+				}
+
+				int mask = -1;
+				int penalty = -1;
+				try {
+					List<Future<Integer>> penalties = POOL.invokeAll(tasks);
+					// the masks are compared in increasing order, so on equal penalties the lowest mask wins
+					for (int m = 0; m <= 7; m++) {
+						int p = penalties.get(m).get();
+						if (p != -1 && (p < penalty || penalty == -1)) {
+							mask = m;
+							penalty = p;
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("The mask selection has been interrupted.", e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("The evaluation of a mask failed.", e.getCause());
+				}
+
+				return candidates.selection(mask, penalty, this);
+			}
+		}
+	}
+
+	/**
+	 * Result of a mask selection: the chosen mask, its penalty, the strategy which chose it and the resulting
+	 * QR code.
+	 *
+	 * The selections made with an EncoderContext belong to the context, and are overwritten by the next rendering
+	 * of the same version with that context.
+	 */
+	public static final class Selection {
+		private final int version;
+		private int mask;
+		private int penalty;
+		private Strategy strategy;
+		private final BitMatrix symbol;
+
+		Selection(int version, int mask, int penalty, Strategy strategy, BitMatrix symbol) {
+			this.version = version;
+			this.mask = mask;
+			this.penalty = penalty;
+			this.strategy = strategy;
+			this.symbol = symbol;
+		}
+
+		/*
+		 * Reuse the selection for another result, the symbol being rewritten by the caller
+		 */
+		Selection reset(int mask, int penalty, Strategy strategy) {
+			this.mask = mask;
+			this.penalty = penalty;
+			this.strategy = strategy;
+			return this;
+		}
+
+		// Getters
+		public int getVersion() { return version; }
+		public int getMask() { return mask; }
+		public int getPenalty() { return penalty; }
+		public Strategy getStrategy() { return strategy; }
+		public BitMatrix getSymbol() { return symbol; }
+
+		/**
+		 * @return the QR code matrix masked with the chosen mask
+		 */
+		public int[][] toMatrix() { return symbol.toMatrix(); }
+	}
+
+	/**
+	 * The 8 masked candidates of a QR code, given to the strategies. The candidates are derived on demand from the
+	 * unmasked QR code, and the penalties of the cheap rules are computed once for all the candidates.
+	 */
+	public static final class Candidates {
+		private final VersionTemplate template;
+		private final BitMatrix candidate;
+		private final BitMatrix columns;
+		private final int[] cheapPenalties;
+		private final int[] predictedOrder;
+		private final Selection result;
+		private Extensions.QRCodeInfos.CorrectionLevel level;
+		private BitMatrix base;
+		private long deadline;
+		private boolean cheapPenaltiesComputed;
+		private boolean predictedOrderComputed;
+
+		Candidates(VersionTemplate template, Extensions.QRCodeInfos.CorrectionLevel level, BitMatrix base,
+				   long deadline) {
+			this(template, null);
+			reset(level, base, deadline);
+		}
+
+		/*
+		 * Candidates which can be reset for another QR code of the same version. When a result is given, the
+		 * selections are written in it instead of being allocated.
+		 */
+		Candidates(VersionTemplate template, Selection result) {
+			this.template = template;
+			this.candidate = new BitMatrix(template.getSize());
+			this.columns = new BitMatrix(template.getSize());
+			this.cheapPenalties = new int[8];
+			this.predictedOrder = new int[8];
+			this.result = result;
+		}
+
+		/*
+		 * Start over with another unmasked QR code of the version
+		 */
+		Candidates reset(Extensions.QRCodeInfos.CorrectionLevel level, BitMatrix base, long deadline) {
+			this.level = level;
+			this.base = base;
+			this.deadline = deadline;
+			this.cheapPenaltiesComputed = false;
+			this.predictedOrderComputed = false;
+			return this;
+		}
+
+		// Getters
+		public int getVersion() { return template.getVersion(); }
+
+		/**
+		 * @return the System.nanoTime() value after which the selection should be done
+		 */
+		public long getDeadline() { return deadline; }
+
+		/**
+		 * @param mask the mask id
+		 * @return the penalty of the rules N2 and N4 for the mask
+		 */
+		public int cheapPenalty(int mask) {
+			if (!cheapPenaltiesComputed) {
+				cheapPenaltiesComputed = true;
+				for (int m = 0; m <= 7; m++) {
+					cheapPenalties[m] = PenaltyEvaluator.cheapPenalty(build(m));
+				}
+			}
+			return cheapPenalties[mask];
+		}
+
+		/**
+		 * @return the masks ordered by increasing penalty of the cheap rules, masks with the same penalty staying
+		 *         in increasing order. The returned array must not be modified.
+		 */
+		public int[] predictedOrder() {
+			if (!predictedOrderComputed) {
+				predictedOrderComputed = true;
+				for (int i = 0; i < predictedOrder.length; i++) {
+					int j = i;
+					// insertion sort, which is stable and more than enough for 8 masks
+					for (; j > 0 && cheapPenalty(predictedOrder[j - 1]) > cheapPenalty(i); j--) {
+						predictedOrder[j] = predictedOrder[j - 1];
+					}
+					predictedOrder[j] = i;
+				}
+			}
+			return predictedOrder;
+		}
+
+		/**
+		 * @param mask the mask id
+		 * @param bound the maximum score of interest
+		 * @return the full penalty of the mask if it is lower or equal to the bound, otherwise a partial score
+		 *         greater than the bound
+		 */
+		public int penalty(int mask, int bound) {
+			int cheapPenalty = cheapPenalty(mask); // computed first as it builds every candidate the first time
+			return PenaltyEvaluator.completePenalty(build(mask), columns, cheapPenalty, bound);
+		}
+
+		/**
+		 * Same as penalty(int, int), but the candidate is built in its own matrices so that several masks can be
+		 * evaluated concurrently.
+		 *
+		 * @param mask the mask id
+		 * @param bound the maximum score of interest
+		 * @return the full penalty of the mask if it is lower or equal to the bound, otherwise a partial score
+		 *         greater than the bound
+		 */
+		public int isolatedPenalty(int mask, int bound) {
+			BitMatrix isolated = new BitMatrix(template.getSize());
+			buildCandidate(isolated, base, template, level, mask);
+			return PenaltyEvaluator.evaluate(isolated, new BitMatrix(template.getSize()), bound);
+		}
+
+		/**
+		 * @param mask the mask id
+		 * @param step the step between two evaluated lines
+		 * @return the estimated penalty of the mask
+		 * @see PenaltyEvaluator#sampledPenalty(BitMatrix, BitMatrix, int)
+		 */
+		public int sampledPenalty(int mask, int step) {
+			return PenaltyEvaluator.sampledPenalty(build(mask), columns, step);
+		}
+
+		/**
+		 * Compute the bound for the penalty of a mask so that it can still beat the best mask found so far: on
+		 * equal penalties the lowest mask wins, so a higher mask has to be strictly better.
+		 *
+		 * @param mask the mask to evaluate
+		 * @param bestMask the best mask found so far, -1 if none
+		 * @param bestPenalty the penalty of the best mask found so far
+		 * @return the maximum penalty of interest for the mask
+		 */
+		public int bound(int mask, int bestMask, int bestPenalty) {
+			if (bestMask == -1) return Integer.MAX_VALUE;
+			return mask < bestMask ? bestPenalty : bestPenalty - 1;
+		}
+
+		/**
+		 * Create the result of a selection
+		 *
+		 * @param mask the chosen mask
+		 * @param penalty the full penalty of the chosen mask
+		 * @param strategy the strategy which chose the mask
+		 * @return the selection with the masked QR code
+		 */
+		public Selection selection(int mask, int penalty, Strategy strategy) {
+			if (result != null) {
+				buildCandidate(result.getSymbol(), base, template, level, mask);
+				return result.reset(mask, penalty, strategy);
+			}
+
+			BitMatrix symbol = new BitMatrix(template.getSize());
+			buildCandidate(symbol, base, template, level, mask);
+			return new Selection(template.getVersion(), mask, penalty, strategy, symbol);
+		}
+
+		private BitMatrix build(int mask) {
+			buildCandidate(candidate, base, template, level, mask);
+			return candidate;
+		}
+	}
+
+	private MaskSelector() {}
+
+	/**
+	 * Find the mask which minimizes the penalty of a QR code with the default strategy and build the masked
+	 * QR code.
+	 *
+	 * @param version
+	 * 			Version of the QR Code
+	 * @param data
+	 * 			Data to add
+	 * @return the selected mask along with the resulting QR code
+	 * @see MaskSelector#STRATEGY
+	 */
+	public static Selection select(int version, boolean[] data) {
+		return select(version, data, STRATEGY, TIME_BUDGET);
+	}
+
+	/**
+	 * Find the mask which minimizes the penalty of a QR code with a given strategy and build the masked QR code.
+	 *
+	 * @param version
+	 * 			Version of the QR Code
+	 * @param data
+	 * 			Data to add
+	 * @param strategy
+	 * 			The strategy used to compare the candidates
+	 * @param timeBudget
+	 * 			The time budget of the selection in nanoseconds, only used by the time-aware strategies
+	 * @return the selected mask along with the resulting QR code
+	 */
+	public static Selection select(int version, boolean[] data, Strategy strategy, long timeBudget) {
+		long deadline = System.nanoTime() + timeBudget;
+		VersionTemplate template = getTemplate(version);
+
+		BitMatrix base = MatrixConstruction.placeData(template.getDataRegion(), data).or(template.getFunctionPatterns());
+		return select(new Candidates(template, getCorrectionLevel(), base, deadline), strategy);
+	}
+
+	/**
+	 * Choose a mask among candidates with a strategy and notify the listener
+	 *
+	 * @param candidates the candidates of the QR code
+	 * @param strategy the strategy used to compare the candidates
+	 * @return the selected mask along with the resulting QR code
+	 */
+	static Selection select(Candidates candidates, Strategy strategy) {
+		Selection selection = strategy.select(candidates);
+
+		if (LISTENER != null) LISTENER.maskSelected(selection);
+		return selection;
+	}
+
+	/**
+	 * Derive the masked QR code of a mask from the unmasked one
+	 *
+	 * @param candidate the matrix where the masked QR code is written
+	 * @param base the function patterns and the unmasked data of the QR code
+	 * @param template the template of the version
+	 * @param level the error correction level of the QR code
+	 * @param mask the mask id
+	 */
+	static void buildCandidate(BitMatrix candidate, BitMatrix base, VersionTemplate template,
+							   Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		candidate.copyFrom(base).xor(template.getMaskPlane(mask)).or(template.getFormatPlane(level, mask));
+	}
+
+	/**
+	 * @param version the version of the QR code
+	 * @return the template of the version, if the version is supported with the current settings
+	 */
+	static VersionTemplate getTemplate(int version) {
+		if (version < 1 || version > 40) {
+			if (MatrixConstruction.USE_EXTENSIONS)
+				throw new UnsupportedOperationException("The version must be between 1 and 40 included.");
+			else
+				throw new UnsupportedOperationException("The version must be between 1 and 4 included.");
+		}
+		if (!MatrixConstruction.USE_EXTENSIONS && version > 4)
+			throw new UnsupportedOperationException("The version must be between 1 and 4 included.");
+
+		return VersionTemplate.of(version);
+	}
+
+	/**
+	 * @return the error correction level used for the format information with the current settings
+	 */
+	static Extensions.QRCodeInfos.CorrectionLevel getCorrectionLevel() {
+		return MatrixConstruction.USE_EXTENSIONS ?
+				Extensions.CORRECTION_LEVEL : Extensions.QRCodeInfos.CorrectionLevel.LOW;
+	}
+}
@@ -1,5 +1,7 @@
 package qrcode;
 
+import java.util.Arrays;
+
 public class MatrixConstruction {
 
     /**
@@ -25,10 +27,10 @@ public class MatrixConstruction {
 	/*
 	 * Constants for the 4 rules given by ISO/IEC 18004:2000(E).
 	 */
-	private static final int PENALITY_N1 = 3;
-	private static final int PENALITY_N2 = 3;
-	private static final int PENALITY_N3 = 40;
-	private static final int PENALITY_N4 = 10;
+	static final int PENALITY_N1 = 3;
+	static final int PENALITY_N2 = 3;
+	static final int PENALITY_N3 = 40;
+	static final int PENALITY_N4 = 10;
 
 	/**
 	 * Pattern definitions, any pattern can be added with the following properties:
@@ -45,6 +47,7 @@ public class MatrixConstruction {
 		private int[][] patternMatrix;
 		private boolean recurring = false;
 		private boolean borders = false;
+		private final Stamp stamp;
 
 		Pattern(int patternCode) {
 			switch(patternCode) {
@@ -83,6 +86,8 @@ public class MatrixConstruction {
 					recurring = true;
 					break;
 			}
+
+			stamp = new Stamp(patternMatrix, recurring, borders);
 		}
 		
 		private int[] sizeOfMatrix() {
@@ -94,6 +99,7 @@ public class MatrixConstruction {
 		public int[] getSize() { return sizeOfMatrix(); }
 		public boolean isRecurring() { return recurring; }
 		public boolean hasBorders() { return borders; }
+		public Stamp getStamp() { return stamp; }
 	}
 
 	/**
@@ -127,7 +133,7 @@ public class MatrixConstruction {
 	 * Create the matrix of a QR code with the given data.
 	 * 
 	 * @param version
-	 *            The version of the QR code
+	 *            The version of the QR code (M1 to M4 are given as -1 to -4, see MicroQRCode)
 	 * @param data
 	 *            The data to be written on the QR code
 	 * @param mask
@@ -136,6 +142,9 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data, int mask) {
+		if (USE_EXTENSIONS && MicroQRCode.isMicroVersion(version))
+			return MicroQRCode.renderMatrix(version, data, mask);
+
 		if (version < 1 || version > 40) {
 			if (USE_EXTENSIONS)
 				throw new UnsupportedOperationException("The version must be between 1 and 40 included.");
@@ -143,6 +152,10 @@ public class MatrixConstruction {
 				throw new UnsupportedOperationException("The version must be between 1 and 4 included.");
 		}
 
+		if (USE_EXTENSIONS && PlacementKernel.ENABLED && mask >= 0 && mask <= 7) {
+			return PlacementKernel.of(version, Extensions.CORRECTION_LEVEL, mask).render(data).toMatrix();
+		}
+
 		if (USE_EXTENSIONS) {
 	    	// We use our own QRCodeInfos class which is defined from the version and the correction level
 			// Other parameters such as the mask are determined with the evaluator done in this file.
@@ -219,6 +232,11 @@ public class MatrixConstruction {
 	 * @return an empty matrix
 	 */
 	public static int[][] initializeMatrix(int version) {
+		if (USE_EXTENSIONS && MicroQRCode.isMicroVersion(version)) {
+			int size = MicroQRCode.getMatrixSize(version);
+			return new int[size][size];
+		}
+
 		if (version < 1 || version > 40) {
 			throw new UnsupportedOperationException("The version must be between 1 and 40 included.");
 		}
@@ -249,33 +267,10 @@ public class MatrixConstruction {
 	 * @param y The starting y coordinate from the anchor
 	 * @param maxX The maximum x coordinate from the anchor (only used when the pattern is recurring)
 	 * @param maxY The maximum y coordinate from the anchor (only used when the pattern is recurring)
+	 * @see Stamp
 	 */
 	public static void addPattern(Pattern p, Anchor a, int[][] matrix, int x, int y, int maxX, int maxY) {
-		for (int j = 0; j < (p.isRecurring() ? maxY - y + 1 : p.getSize()[0]); j++) {
-			for (int i = 0; i < (p.isRecurring() ? maxX - x + 1 : p.getSize()[1]); i++) {
-				if (p.isRecurring())
-					matrix[j + y][i + x] = p.getPatternMatrix()[j % p.getSize()[0]][i % p.getSize()[1]] == 0 ? W : B;
-				else
-					matrix[j + y - a.translateValues(p.getSize())[0]][i + x - a.translateValues(p.getSize())[1]] =
-							p.getPatternMatrix()[j][i] == 0 ? W : B;
-			}
-		}
-
-		if (p.hasBorders()) {
-			for (int j = -1; j <= p.getSize()[0]; j++) {
-				for (int i = -1; i <= p.getSize()[1]; i++) {
-					int xCord = i + x - a.translateValues(p.getSize())[1];
-					int yCord = j + y - a.translateValues(p.getSize())[0];
-
-					if ((j == -1 && yCord >= 0 && i > -1) ||
-							(i == -1 && xCord >= 0 && j > -1) ||
-							(j == p.getSize()[0] && yCord <= p.getSize()[0] && xCord > -1 && xCord < matrix.length) ||
-							(i == p.getSize()[1] && xCord <= p.getSize()[1] && yCord > -1 && yCord < matrix.length)) {
-						matrix[yCord][xCord] = W;
-					}
-				}
-			}
-		}
+		p.getStamp().stamp(a, matrix, x, y, maxX, maxY);
 	}
 
 	/**
@@ -365,15 +360,14 @@ public class MatrixConstruction {
 	public static int maskColor(int col, int row, boolean dataBit, int masking) {
 		boolean applyMask;
 
-		int i = ((row * col) % 2) + ((row * col) % 3);
 		switch (masking) {
 			case 0: applyMask = (col + row) % 2 == 0; break;
 			case 1: applyMask = row % 2 == 0; break;
 			case 2: applyMask = col % 3 == 0; break;
 			case 3: applyMask = (col + row) % 3 == 0; break;
 			case 4: applyMask = ((row / 2) + (col / 3)) % 2 == 0; break;
-			case 5: applyMask = i == 0; break;
-			case 6: applyMask = i % 2 == 0; break;
+			case 5: applyMask = ((row * col) % 2) + ((row * col) % 3) == 0; break;
+			case 6: applyMask = (((row * col) % 2) + ((row * col) % 3)) % 2 == 0; break;
 			case 7: applyMask = (((row + col) % 2) + ((row * col) % 3)) % 2 == 0; break;
 			default: applyMask = false;
 		}
@@ -390,36 +384,125 @@ public class MatrixConstruction {
 	 *            the data to add
 	 */
 	public static void addDataInformation(int[][] matrix, boolean[] data, int mask) {
-        int currentBit = 0;
-        int direction = -1;
+		BitMatrix region = BitMatrix.emptyModules(matrix);
+		BitMatrix bits = placeData(region, data);
+		applyMask(bits, region, mask);
+		bits.writeTo(matrix, region);
+	}
 
-        int x = matrix.length - 1;
-        int y = matrix.length - 1;
+	/**
+	 * Place the data bits, without any mask, on the modules of a region following the zigzag order of the
+	 * QR code specification. The modules of the region which are left once all the data is placed stay light.
+	 *
+	 * @param region
+	 *            the modules where the data can be placed (usually the data region of the version)
+	 * @param data
+	 *            the data to place
+	 * @return a packed matrix where the dark modules are the data bits set to true
+	 */
+	public static BitMatrix placeData(BitMatrix region, boolean[] data) {
+		VersionTemplate template = region.getWidth() == region.getHeight() ? VersionTemplate.ofSize(region.getWidth()) : null;
+		int[] order = template != null && template.getDataRegion().equals(region) ?
+				template.getPlacementOrder() : placementOrder(region);
+
+		BitMatrix bits = new BitMatrix(region.getWidth(), region.getHeight());
+		placeData(bits, order, data);
+		return bits;
+	}
+
+	/**
+	 * Place the data bits on a matrix by inverting the module of every bit set to true, which sets them on a
+	 * cleared matrix and applies them on an already masked one
+	 *
+	 * @param target
+	 *            the matrix where the data is placed
+	 * @param order
+	 *            the modules in placement order, see placementOrder(BitMatrix)
+	 * @param data
+	 *            the data to place
+	 */
+	static void placeData(BitMatrix target, int[] order, boolean[] data) {
+		long[] words = target.getWords();
+		int length = Math.min(order.length, data.length);
+		for (int i = 0; i < length; i++) {
+			if (data[i]) words[order[i] >>> 6] ^= 1L << order[i];
+		}
+	}
+
+	/**
+	 * Compute the zigzag order of the QR code specification in which the data bits are placed on the modules of a
+	 * region
+	 *
+	 * @param region
+	 *            the modules where the data can be placed
+	 * @return the modules of the region in placement order, given as the index of their bit in the words of a
+	 *         packed matrix of the size of the region: the module is the bit (i % 64) of the word (i / 64)
+	 */
+	static int[] placementOrder(BitMatrix region) {
+		return placementOrder(region, region.getWidth() - 1, 6);
+	}
 
-        for (;x > 0; x -= 2) {
-			if (x == 6) x -= 1;    // Skip vertical timing pattern
-			for (;y >= 0 && y < matrix.length; y += direction) {
+	/**
+	 * Same as placementOrder(BitMatrix) for symbols whose columns are not paired from the last one or whose
+	 * vertical timing pattern is on another column (the first one for Micro QR codes, none for rMQR codes)
+	 *
+	 * @param region
+	 *            the modules where the data can be placed
+	 * @param firstColumn
+	 *            the right column of the first pair of columns
+	 * @param timingColumn
+	 *            the column skipped by the zigzag, -1 if no column is skipped
+	 * @return the modules of the region in placement order
+	 * @see MatrixConstruction#placementOrder(BitMatrix)
+	 */
+	static int[] placementOrder(BitMatrix region, int firstColumn, int timingColumn) {
+		int[] order = new int[region.bitCount()];
+		int modules = 0;
+		int direction = -1;
+
+		int x = firstColumn;
+		int y = region.getHeight() - 1;
+
+		for (;x > 0; x -= 2) {
+			if (x == timingColumn) x -= 1;    // Skip vertical timing pattern
+			for (;y >= 0 && y < region.getHeight(); y += direction) {
 				for (int i = 0; i <= 1; i++) {
 					int posX = x - i;
 
 					// If a bit is already placed there
-					if (matrix[posX][y] != 0) continue;
-
-					boolean bitToPlace;
-					if (currentBit < data.length) {
-						bitToPlace = data[currentBit];
-						currentBit++;
-					} else {
-						bitToPlace = false;
-					}
+					if (!region.get(posX, y)) continue;
 
-					matrix[posX][y] = maskColor(posX, y, bitToPlace, mask);
+					order[modules++] = (posX * region.getWordsPerLine() << 6) + y;
 				}
 			}
 
 			direction = -direction;
 			y += direction;
 		}
+
+		return modules == order.length ? order : Arrays.copyOf(order, modules);
+	}
+
+	/**
+	 * Apply a mask on the modules of a region of a packed matrix. When the region is the data region of a version,
+	 * the precomputed bitplanes of the version are used so that masking is a single XOR per 64 modules.
+	 *
+	 * @param bits
+	 *            the packed matrix to mask
+	 * @param region
+	 *            the modules which have to be masked
+	 * @param mask
+	 *            the mask id. If not valid (e.g: -1), then no mask is applied
+	 */
+	public static void applyMask(BitMatrix bits, BitMatrix region, int mask) {
+		if (mask < 0 || mask > 7) return;
+
+		VersionTemplate template = region.getWidth() == region.getHeight() ? VersionTemplate.ofSize(region.getWidth()) : null;
+		if (template != null && template.getDataRegion().equals(region)) {
+			bits.xor(template.getMaskPlane(mask));
+		} else {
+			bits.xor(VersionTemplate.createMaskPlane(region, mask));
+		}
 	}
 
 	/*
@@ -433,7 +516,8 @@ public class MatrixConstruction {
 	/**
 	 * Create the matrix of a QR code with the given data.
 	 * 
-	 * The mask is computed automatically so that it provides the least penalty
+	 * The mask is computed automatically so that it provides the least penalty,
+	 * the QR code of the chosen mask is returned without being rendered again
 	 * 
 	 * @param version
 	 *            The version of the QR code
@@ -442,8 +526,43 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data) {
-		int mask = findBestMasking(version, data);
-		return renderQRCodeMatrix(version, data, mask);
+		if (USE_EXTENSIONS && MicroQRCode.isMicroVersion(version))
+			return MicroQRCode.renderMatrix(version, data);
+
+		return MaskSelector.select(version, data).toMatrix();
+	}
+
+	/**
+	 * Encode a string and create the QR code of it with the scratch buffers of a context, the mask being selected
+	 * with the default strategy. Once the context has rendered a version, rendering that version again allocates
+	 * nothing.
+	 *
+	 * @param context
+	 *            The context providing the buffers, see EncoderContext#perThread()
+	 * @param version
+	 *            The version of the QR code
+	 * @param payload
+	 *            The string to encode, truncated to the capacity of the version
+	 * @return the selected mask along with the resulting QR code, which belong to the context
+	 * @see EncoderContext
+	 */
+	public static MaskSelector.Selection renderInto(EncoderContext context, int version, String payload) {
+		VersionTemplate template = MaskSelector.getTemplate(version);
+		Extensions.QRCodeInfos.CorrectionLevel level = MaskSelector.getCorrectionLevel();
+
+		int codewordsLength = context.encode(payload, version, level);
+		return MaskSelector.select(
+				context.candidates(template, level, codewordsLength, System.nanoTime() + MaskSelector.TIME_BUDGET),
+				MaskSelector.STRATEGY);
+	}
+
+	/**
+	 * Same as renderInto(EncoderContext, int, String) with the largest version of the context
+	 *
+	 * @see MatrixConstruction#renderInto(EncoderContext, int, String)
+	 */
+	public static MaskSelector.Selection renderInto(EncoderContext context, String payload) {
+		return renderInto(context, context.getMaxVersion(), payload);
 	}
 
 	/**
@@ -455,20 +574,13 @@ public class MatrixConstruction {
 	 * @param data
 	 * 			Data to add
 	 * @return the mask number that minimize the penalty
+	 * @see MaskSelector#select(int, boolean[])
 	 */
 	public static int findBestMasking(int version, boolean[] data) {
-		int mask = -1;
-		int penalty = -1;
-		for (int m = 0; m <= 7; m++) {
-			int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(version, data, m);
-			int p = evaluate(qrCode);
-			if (p < penalty || penalty == -1) {
-				mask = m;
-				penalty = p;
-			}
-		}
-		System.out.println("MASK CHOSEN : " + mask);
-		return mask;
+		if (USE_EXTENSIONS && MicroQRCode.isMicroVersion(version))
+			return MicroQRCode.findBestMasking(version, data);
+
+		return MaskSelector.select(version, data).getMask();
 	}
 
 	/**
@@ -479,6 +591,7 @@ public class MatrixConstruction {
 	 * @param matrix:
 	 *            the QR code in matrix form
 	 * @return the penalty score obtained by the QR code, lower the better
+	 * @see PenaltyEvaluator for the same evaluation on packed QR codes
 	 */
 	public static int evaluate(int[][] matrix) {
 
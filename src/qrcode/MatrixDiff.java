@@ -0,0 +1,127 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Differences between a matrix and its expected matrix, module by module.
+ *
+ * A diff only depends on the matrices, so that it can be computed without loading any AWT class: reading the
+ * expected images and drawing the diff images are left to Helpers#diff(int[][], String).
+ *
+ * @see Helpers#diff(int[][], String)
+ */
+public final class MatrixDiff {
+
+	private final int width;
+	private final int height;
+	private final int count;
+	private final int[] xs;
+	private final int[] ys;
+
+	private MatrixDiff(int width, int height, int count, int[] xs, int[] ys) {
+		this.width = width;
+		this.height = height;
+		this.count = count;
+		this.xs = xs;
+		this.ys = ys;
+	}
+
+	/**
+	 * Compare two matrices
+	 *
+	 * @param matrix the matrix to check
+	 * @param expected the expected matrix
+	 * @return the differences between the matrices
+	 * @throws IllegalArgumentException if the matrices do not have the same size
+	 */
+	public static MatrixDiff of(int[][] matrix, int[][] expected) {
+		if (expected.length != matrix.length || expected[0].length != matrix[0].length) {
+			throw new IllegalArgumentException("The size of the two QR code does not match: matrix:" + matrix.length
+					+ "x" + matrix[0].length + "  image:" + expected.length + "x" + expected[0].length);
+		}
+
+		int count = 0;
+		int[] xs = new int[16];
+		int[] ys = new int[16];
+		for (int x = 0; x < matrix.length; x++) {
+			int[] line = matrix[x];
+			int[] expectedLine = expected[x];
+			if (Arrays.equals(line, expectedLine)) continue;
+
+			for (int y = 0; y < line.length; y++) {
+				if (line[y] == expectedLine[y]) continue;
+
+				if (count == xs.length) {
+					xs = Arrays.copyOf(xs, count * 2);
+					ys = Arrays.copyOf(ys, count * 2);
+				}
+				xs[count] = x;
+				ys[count] = y;
+				count++;
+			}
+		}
+		return new MatrixDiff(matrix.length, matrix[0].length, count, xs, ys);
+	}
+
+	// Getters
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getCount() { return count; }
+
+	/**
+	 * @return whether the matrices are the same
+	 */
+	public boolean isSimilar() {
+		return count == 0;
+	}
+
+	/**
+	 * @param i the index of the difference, the differences being sorted by x then y
+	 * @return the x coordinate of the difference
+	 */
+	public int getX(int i) {
+		checkIndex(i);
+		return xs[i];
+	}
+
+	/**
+	 * @param i the index of the difference, the differences being sorted by x then y
+	 * @return the y coordinate of the difference
+	 */
+	public int getY(int i) {
+		checkIndex(i);
+		return ys[i];
+	}
+
+	/**
+	 * @return whether the module is one of the differences
+	 */
+	public boolean differs(int x, int y) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int order = xs[middle] != x ? Integer.compare(xs[middle], x) : Integer.compare(ys[middle], y);
+			if (order == 0) return true;
+			if (order < 0) low = middle + 1;
+			else high = middle - 1;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(count).append(" different modules on ").append(width).append('x').append(height);
+		for (int i = 0; i < Math.min(count, 10); i++) {
+			builder.append(i == 0 ? ": " : ", ").append('(').append(xs[i]).append(", ").append(ys[i]).append(')');
+		}
+		if (count > 10) builder.append(", ...");
+		return builder.toString();
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= count)
+			throw new IndexOutOfBoundsException("There are only " + count + " differences.");
+	}
+}
@@ -0,0 +1,387 @@
+package qrcode;
+
+import reedsolomon.ErrorCorrectionEncoding;
+
+/**
+ * Micro QR codes (M1 to M4, from 11x11 to 17x17 modules), following ISO/IEC 18004:2015(E).
+ *
+ * Micro QR codes go through the same API as the QR codes: their versions are given as negative numbers
+ * (M1 = -1, M2 = -2, M3 = -3 and M4 = -4) to DataEncoding#byteModeEncoding(String, int) and to the rendering
+ * methods of MatrixConstruction, the error correction level being Extensions.CORRECTION_LEVEL. They require
+ * MatrixConstruction.USE_EXTENSIONS, like the QR codes above version 4.
+ *
+ * Compared to QR codes, a Micro QR code has:
+ *      - a single finder pattern, in the top left corner, and its timing patterns on the first line and column
+ *      - no alignment pattern, no dark module and no version information
+ *      - a single copy of its format information, which gives the version, the correction level and the mask
+ *      - only 4 masks (the QR code masks 1, 4, 6 and 7) and its own evaluation: the mask with the most dark
+ *        modules on the right and bottom edges is chosen
+ *      - a data encoding where the mode, the character count and the terminator are shorter. Since M1 only
+ *        supports the numeric mode and M2 the numeric and alphanumeric modes, the most compact mode which can
+ *        encode the whole input is used instead of always using the byte mode
+ *
+ * @see Extensions
+ */
+public final class MicroQRCode {
+
+	public static final int M1 = -1;
+	public static final int M2 = -2;
+	public static final int M3 = -3;
+	public static final int M4 = -4;
+
+	private static final int MASK_AMOUNT = 4;
+
+	/*
+	 * The QR code masks used by the 4 Micro QR code masks
+	 */
+	private static final int[] MASKS = {1, 4, 6, 7};
+
+	/*
+	 * Data capacity in bits and amount of error correction codewords, for every symbol:
+	 * M1 (error detection only), M2-L, M2-M, M3-L, M3-M, M4-L, M4-M, M4-Q (in the order of the symbol numbers).
+	 * The last data codeword of M1 and M3 only has 4 bits.
+	 */
+	private static final int[] DATA_BITS = {20, 40, 32, 84, 68, 128, 112, 80};
+	private static final int[] ECC_CODEWORDS = {2, 5, 6, 6, 8, 8, 10, 14};
+	private static final int[] FIRST_SYMBOL_NUMBER = {0, 1, 3, 5};
+
+	private static final int FORMAT_MASK = 0b100010001000101;
+
+	private static final int NUMERIC = 0;
+	private static final int ALPHANUMERIC = 1;
+	private static final int BYTE = 2;
+	private static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	private MicroQRCode() {}
+
+	/**
+	 * @param version a version number
+	 * @return whether the version is the one of a Micro QR code (between -4 and -1)
+	 */
+	public static boolean isMicroVersion(int version) {
+		return version <= M1 && version >= M4;
+	}
+
+	/**
+	 * @param version the version of the Micro QR code
+	 * @return the size of the matrix, from 11 for M1 to 17 for M4
+	 */
+	public static int getMatrixSize(int version) {
+		checkVersion(version);
+		return 9 - 2 * version;
+	}
+
+	/**
+	 * Get the symbol number of a Micro QR code, which identifies both its version and its correction level
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level (ignored by M1, which only detects errors)
+	 * @return the symbol number, between 0 and 7 included
+	 */
+	public static int getSymbolNumber(int version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		checkVersion(version);
+		if (version == M1) return 0;
+
+		int maxLevel = version == M4 ? 2 : 1;
+		if (level.ordinal() > maxLevel)
+			throw new UnsupportedOperationException("The correction level " + level + " is not available for M" + -version + ".");
+
+		return FIRST_SYMBOL_NUMBER[-version - 1] + level.ordinal();
+	}
+
+	/**
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level
+	 * @return the amount of data bits of the Micro QR code
+	 */
+	public static int getDataBits(int version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		return DATA_BITS[getSymbolNumber(version, level)];
+	}
+
+	/*
+	 * =======================================================================
+	 *
+	 * **************************** DATA ENCODING ****************************
+	 *
+	 * =======================================================================
+	 */
+
+	/**
+	 * Encode a string in the most compact mode supported by the version (numeric, alphanumeric or byte mode)
+	 * and add the error correction.
+	 *
+	 * @param input the string to encode, truncated to the capacity of the version
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level
+	 * @return the bits of the data codewords followed by the bits of the error correction codewords
+	 */
+	public static boolean[] encode(String input, int version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int symbol = getSymbolNumber(version, level);
+		int n = -version;
+		int capacity = DATA_BITS[symbol];
+
+		int mode = isNumeric(input) ? NUMERIC : isAlphanumeric(input) ? ALPHANUMERIC : BYTE;
+		if (mode == ALPHANUMERIC && version == M1 || mode == BYTE && (version == M1 || version == M2))
+			throw new UnsupportedOperationException("M" + n + " symbols cannot encode this input, use a larger version.");
+
+		int[] bytes = mode == BYTE ? DataEncoding.encodeString(input, Integer.MAX_VALUE) : null;
+		int length = mode == BYTE ? bytes.length : input.length();
+		int countBits = mode == NUMERIC ? n + 2 : n + 1;
+		int available = capacity - (n - 1) - countBits;
+
+		// truncate the input to the capacity of the symbol
+		length = Math.min(length, (1 << countBits) - 1);
+		while (length > 0 && segmentBits(mode, length) > available) length--;
+
+		BitStream stream = new BitStream(capacity);
+		stream.append(mode, n - 1);
+		stream.append(length, countBits);
+		switch (mode) {
+			case NUMERIC:
+				for (int i = 0; i < length; i += 3) {
+					int digits = Math.min(3, length - i);
+					stream.append(Integer.parseInt(input.substring(i, i + digits)), digits * 3 + 1);
+				}
+				break;
+			case ALPHANUMERIC:
+				for (int i = 0; i < length; i += 2) {
+					int first = ALPHANUMERIC_CHARSET.indexOf(input.charAt(i));
+					if (i + 1 < length) stream.append(first * 45 + ALPHANUMERIC_CHARSET.indexOf(input.charAt(i + 1)), 11);
+					else stream.append(first, 6);
+				}
+				break;
+			default:
+				for (int i = 0; i < length; i++) stream.append(bytes[i], 8);
+		}
+
+		// terminator (possibly truncated), bits to the next codeword and padding codewords
+		stream.append(0, Math.min(2 * n + 1, capacity - stream.length));
+		stream.append(0, Math.min((8 - stream.length % 8) % 8, capacity - stream.length));
+		for (int i = 0; stream.length + 8 <= capacity; i++) {
+			stream.append(i % 2 == 0 ? 0b11101100 : 0b00010001, 8);
+		}
+		stream.append(0, capacity - stream.length);
+
+		// the 4 bits of the last data codeword of M1 and M3 are the high bits of its byte for the error correction
+		int[] dataCodewords = new int[(capacity + 7) / 8];
+		for (int i = 0; i < capacity; i++) {
+			if (stream.bits[i]) dataCodewords[i / 8] |= 0x80 >> (i % 8);
+		}
+		int[] ecc = ErrorCorrectionEncoding.encode(dataCodewords, ECC_CODEWORDS[symbol]);
+
+		boolean[] data = new boolean[capacity + ecc.length * 8];
+		System.arraycopy(stream.bits, 0, data, 0, capacity);
+		boolean[] eccBits = DataEncoding.bytesToBinaryArray(ecc);
+		System.arraycopy(eccBits, 0, data, capacity, eccBits.length);
+		return data;
+	}
+
+	private static int segmentBits(int mode, int length) {
+		switch (mode) {
+			case NUMERIC: return length / 3 * 10 + (length % 3 == 0 ? 0 : length % 3 * 3 + 1);
+			case ALPHANUMERIC: return length / 2 * 11 + length % 2 * 6;
+			default: return length * 8;
+		}
+	}
+
+	private static boolean isNumeric(String input) {
+		for (int i = 0; i < input.length(); i++) {
+			if (input.charAt(i) < '0' || input.charAt(i) > '9') return false;
+		}
+		return true;
+	}
+
+	private static boolean isAlphanumeric(String input) {
+		for (int i = 0; i < input.length(); i++) {
+			if (ALPHANUMERIC_CHARSET.indexOf(input.charAt(i)) < 0) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Fixed size sequence of bits, written most significant bit first
+	 */
+	private static final class BitStream {
+		private final boolean[] bits;
+		private int length;
+
+		BitStream(int capacity) {
+			this.bits = new boolean[capacity];
+		}
+
+		void append(int value, int bitCount) {
+			for (int i = bitCount - 1; i >= 0; i--) {
+				bits[length++] = (value >> i & 1) != 0;
+			}
+		}
+	}
+
+	/*
+	 * =======================================================================
+	 *
+	 * ************************* MATRIX CONSTRUCTION *************************
+	 *
+	 * =======================================================================
+	 */
+
+	/**
+	 * Create the matrix of a Micro QR code with its function patterns and its format information
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level
+	 * @param mask the mask id, between 0 and 3 included. If not valid, the format information is left light
+	 * @return the matrix where only the data modules remain empty
+	 */
+	public static int[][] constructMatrix(int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		int size = getMatrixSize(version);
+		int[][] matrix = new int[size][size];
+
+		// the borders of the finder pattern are only added on its right and bottom sides, as in a QR code
+		MatrixConstruction.addPattern(MatrixConstruction.Pattern.FINDERPATTERN, MatrixConstruction.Anchor.NORTH_WEST,
+				matrix, 0, 0);
+		MatrixConstruction.addPattern(MatrixConstruction.Pattern.TIMINGPATTERNROW, MatrixConstruction.Anchor.WEST,
+				matrix, 8, 0, size - 1, 0);
+		MatrixConstruction.addPattern(MatrixConstruction.Pattern.TIMINGPATTERNCOL, MatrixConstruction.Anchor.NORTH,
+				matrix, 0, 8, 0, size - 1);
+		addFormatInformation(matrix, version, level, mask);
+
+		return matrix;
+	}
+
+	/**
+	 * Add the format information of a Micro QR code: bits 0 to 7 go down the column 8 from the line 1 and bits
+	 * 14 to 7 go right along the line 8 from the column 1
+	 *
+	 * @param matrix the matrix of the Micro QR code
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level
+	 * @param mask the mask id, between 0 and 3 included. If not valid, the format information is left light
+	 */
+	public static void addFormatInformation(int[][] matrix, int version, Extensions.QRCodeInfos.CorrectionLevel level,
+											int mask) {
+		int format = mask < 0 || mask >= MASK_AMOUNT ? 0 : getFormatInformation(version, level, mask);
+
+		for (int i = 0; i < 8; i++) {
+			matrix[8][i + 1] = (format >> i & 1) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+			matrix[i + 1][8] = (format >> (14 - i) & 1) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+		}
+	}
+
+	/**
+	 * Compute the 15 bits of the format information: the symbol number and the mask, their BCH code and the
+	 * Micro QR code mask
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param level the error correction level
+	 * @param mask the mask id, between 0 and 3 included
+	 * @return the format information, most significant bit being the bit 14
+	 */
+	public static int getFormatInformation(int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		int code = getSymbolNumber(version, level) << 2 | mask;
+		int current = code;
+		for (int i = 0; i < 10; i++) {
+			current = (current << 1) ^ ((current >>> 9) * 0b10100110111);
+		}
+		return (code << 10 | current) ^ FORMAT_MASK;
+	}
+
+	/**
+	 * Create the matrix of a Micro QR code with the given data, using Extensions.CORRECTION_LEVEL
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param data the data bits, see encode(String, int, CorrectionLevel)
+	 * @param mask the mask id, between 0 and 3 included. If not valid (e.g: -1), then no mask is used
+	 * @return the matrix of the Micro QR code
+	 */
+	public static int[][] renderMatrix(int version, boolean[] data, int mask) {
+		int[][] matrix = constructMatrix(version, Extensions.CORRECTION_LEVEL, mask);
+		BitMatrix region = BitMatrix.emptyModules(matrix);
+
+		BitMatrix bits = placeData(region, data);
+		if (mask >= 0 && mask < MASK_AMOUNT) bits.xor(VersionTemplate.createMaskPlane(region, MASKS[mask]));
+		bits.writeTo(matrix, region);
+
+		return matrix;
+	}
+
+	/**
+	 * Create the matrix of a Micro QR code with the mask giving the best evaluation
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param data the data bits
+	 * @return the matrix of the Micro QR code
+	 */
+	public static int[][] renderMatrix(int version, boolean[] data) {
+		return renderMatrix(version, data, findBestMasking(version, data));
+	}
+
+	/**
+	 * Find the mask giving the highest evaluation to a Micro QR code
+	 *
+	 * @param version the version of the Micro QR code
+	 * @param data the data bits
+	 * @return the mask id, between 0 and 3 included
+	 */
+	public static int findBestMasking(int version, boolean[] data) {
+		// the edges only hold data modules (besides the timing patterns), so the format information is not needed
+		BitMatrix region = BitMatrix.emptyModules(constructMatrix(version, Extensions.CORRECTION_LEVEL, 0));
+		BitMatrix bits = placeData(region, data);
+		BitMatrix candidate = new BitMatrix(region.getWidth());
+
+		int bestMask = 0;
+		int bestScore = -1;
+		for (int m = 0; m < MASK_AMOUNT; m++) {
+			candidate.copyFrom(bits).xor(VersionTemplate.createMaskPlane(region, MASKS[m]));
+			int score = evaluate(candidate);
+			if (score > bestScore) {
+				bestMask = m;
+				bestScore = score;
+			}
+		}
+		return bestMask;
+	}
+
+	/**
+	 * Evaluate a Micro QR code: with SUM1 and SUM2 the amount of dark modules on its right and bottom edges (the
+	 * timing patterns excluded), the score is SUM1 * 16 + SUM2 if SUM1 <= SUM2 and SUM2 * 16 + SUM1 otherwise.
+	 *
+	 * @param matrix the Micro QR code
+	 * @return the score of the Micro QR code, higher the better
+	 */
+	public static int evaluate(int[][] matrix) {
+		return evaluate(BitMatrix.fromMatrix(matrix));
+	}
+
+	/**
+	 * @see MicroQRCode#evaluate(int[][])
+	 */
+	public static int evaluate(BitMatrix symbol) {
+		int last = symbol.getWidth() - 1;
+		int right = 0;
+		int bottom = 0;
+		for (int i = 1; i <= last; i++) {
+			if (symbol.get(last, i)) right++;
+			if (symbol.get(i, last)) bottom++;
+		}
+
+		return right <= bottom ? right * 16 + bottom : bottom * 16 + right;
+	}
+
+	/*
+	 * The timing column of a Micro QR code is the first one, which is never part of the zigzag columns
+	 */
+	private static BitMatrix placeData(BitMatrix region, boolean[] data) {
+		int[] order = MatrixConstruction.placementOrder(region, region.getWidth() - 1, 0);
+		BitMatrix bits = new BitMatrix(region.getWidth(), region.getHeight());
+		long[] words = bits.getWords();
+		for (int i = 0; i < Math.min(order.length, data.length); i++) {
+			if (data[i]) words[order[i] >>> 6] |= 1L << order[i];
+		}
+		return bits;
+	}
+
+	private static void checkVersion(int version) {
+		if (!isMicroVersion(version))
+			throw new UnsupportedOperationException("Micro QR code versions must be within M1 (-1) and M4 (-4) included.");
+	}
+}
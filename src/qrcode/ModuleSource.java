@@ -0,0 +1,149 @@
+package qrcode;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of the modules of a symbol, which does not need to be materialized as an int[][] matrix.
+ *
+ * Modules are indexed like the int[][] matrices (isDark(x, y) corresponds to matrix[x][y]), and a row is the line
+ * of modules sharing the same y coordinate, which is the order in which images are usually written. A view can
+ * therefore be streamed row by row to an image, a framebuffer or a LED driver, for instance:
+ *
+ * 		ModuleSource source = ModuleSource.of(version, DataEncoding.byteModeEncoding(input, version));
+ * 		Iterator<long[]> rows = source.rows();
+ * 		while (rows.hasNext()) output(rows.next());
+ *
+ * The views returned by of(int, boolean[], int) keep only the packed data bits of the symbol and compute every
+ * module on demand from the version template and the mask.
+ *
+ * @see VersionTemplate
+ */
+public interface ModuleSource {
+
+	/**
+	 * @return the amount of modules in a row (first index of the int[][] matrices)
+	 */
+	int getWidth();
+
+	/**
+	 * @return the amount of rows (second index of the int[][] matrices)
+	 */
+	int getHeight();
+
+	/**
+	 * @param x the x coordinate of the module
+	 * @param y the y coordinate of the module
+	 * @return whether the module is dark
+	 */
+	boolean isDark(int x, int y);
+
+	/**
+	 * @param x the x coordinate of the module
+	 * @param y the y coordinate of the module
+	 * @return the color of the module, MatrixConstruction.B or MatrixConstruction.W
+	 */
+	default int getColor(int x, int y) {
+		return isDark(x, y) ? MatrixConstruction.B : MatrixConstruction.W;
+	}
+
+	/**
+	 * Pack a row, the module x being the bit (x % 64) of the word (x / 64)
+	 *
+	 * @param y the y coordinate of the row
+	 * @param row the words to write the row to, at least (getWidth() + 63) / 64 of them, or null to allocate them
+	 * @return the words of the row
+	 */
+	default long[] getRow(int y, long[] row) {
+		int words = (getWidth() + 63) >>> 6;
+		if (row == null) row = new long[words];
+
+		for (int w = 0; w < words; w++) row[w] = 0;
+		for (int x = 0; x < getWidth(); x++) {
+			if (isDark(x, y)) row[x >>> 6] |= 1L << x;
+		}
+		return row;
+	}
+
+	/**
+	 * Get the colors of a row
+	 *
+	 * @param y the y coordinate of the row
+	 * @param colors the array to write the colors to, at least getWidth() long, or null to allocate it
+	 * @return the colors of the row, MatrixConstruction.B or MatrixConstruction.W
+	 */
+	default int[] getRowColors(int y, int[] colors) {
+		if (colors == null) colors = new int[getWidth()];
+
+		for (int x = 0; x < getWidth(); x++) {
+			colors[x] = getColor(x, y);
+		}
+		return colors;
+	}
+
+	/**
+	 * Iterate over the packed rows, from the top one (y = 0) to the bottom one. Every call to next() reuses the
+	 * same words, which are only valid until the following call.
+	 *
+	 * @return an iterator over the rows
+	 * @see ModuleSource#getRow(int, long[])
+	 */
+	default Iterator<long[]> rows() {
+		return new Iterator<long[]>() {
+			private final long[] row = new long[(getWidth() + 63) >>> 6];
+			private int y = 0;
+
+			@Override
+			public boolean hasNext() {
+				return y < getHeight();
+			}
+
+			@Override
+			public long[] next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return getRow(y++, row);
+			}
+		};
+	}
+
+	/**
+	 * Materialize the view
+	 *
+	 * @return the int[][] matrix of the modules
+	 */
+	default int[][] toMatrix() {
+		int[][] matrix = new int[getWidth()][getHeight()];
+		for (int x = 0; x < getWidth(); x++) {
+			for (int y = 0; y < getHeight(); y++) {
+				matrix[x][y] = getColor(x, y);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Create a lazy view of a QR code, which keeps only its placed data bits
+	 *
+	 * @param version the version of the QR code
+	 * @param data the data to be written on the QR code
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the view of the same QR code as MatrixConstruction#renderQRCodeMatrix(int, boolean[], int)
+	 */
+	static ModuleSource of(int version, boolean[] data, int mask) {
+		if (mask < 0 || mask > 7)
+			throw new IllegalArgumentException("The mask must be between 0 and 7 included.");
+
+		VersionTemplate template = MaskSelector.getTemplate(version);
+		return new LazySymbol(template, MaskSelector.getCorrectionLevel(), mask,
+				MatrixConstruction.placeData(template.getDataRegion(), data));
+	}
+
+	/**
+	 * Create a lazy view of a QR code with the mask selected by MatrixConstruction#findBestMasking(int, boolean[])
+	 *
+	 * @see ModuleSource#of(int, boolean[], int)
+	 */
+	static ModuleSource of(int version, boolean[] data) {
+		return of(version, data, MatrixConstruction.findBestMasking(version, data));
+	}
+}
@@ -0,0 +1,322 @@
+package qrcode;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streaming writer of PDF documents made of symbols, without any dependency.
+ *
+ * Every distinct symbol is written once as a form XObject whose content is the path of its dark runs (see
+ * VectorWriter#writePdfPath(ModuleSource, Appendable)), in module units, and is then drawn by any page with a
+ * single "Do" operator scaled to the module size. The objects are written as soon as they are complete: the
+ * XObjects when their symbol is first drawn and the pages when they end, their offsets being recorded for the
+ * cross-reference table written on close. The writer therefore only keeps the content of the current page, the
+ * last SHARED_SYMBOLS symbols (to reuse their XObjects) and a few bytes per object, no matter how many pages the
+ * document has.
+ *
+ * 		try (PdfWriter pdf = new PdfWriter(output, true)) {
+ * 			pdf.beginPage(595, 842);
+ * 			pdf.drawSymbol(ModuleSource.of(version, data), 72, 600, 4);
+ * 			pdf.endPage();
+ * 		}
+ */
+public final class PdfWriter implements Closeable {
+
+	/**
+	 * Amount of recently drawn symbols whose XObject is reused when they are drawn again
+	 */
+	public static final int SHARED_SYMBOLS = 256;
+
+	private static final int CATALOG = 1;
+	private static final int PAGES = 2;
+
+	private final CountingOutputStream output;
+	private final boolean compress;
+	private final Map<SymbolKey, Integer> shared = new LinkedHashMap<SymbolKey, Integer>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SymbolKey, Integer> eldest) {
+			return size() > SHARED_SYMBOLS;
+		}
+	};
+
+	private long[] offsets = new long[64];
+	private int[] pages = new int[16];
+	private int pageCount;
+	private int nextObject = PAGES + 1;
+
+	// current page
+	private StringBuilder content;
+	private Map<Integer, String> resources;
+	private String mediaBox;
+	private boolean closed;
+
+	/**
+	 * Start a document
+	 *
+	 * @param output the stream to write the document to, which is closed with the writer
+	 * @param compress whether the streams are compressed with deflate
+	 * @throws IOException if the stream cannot be written
+	 */
+	public PdfWriter(OutputStream output, boolean compress) throws IOException {
+		this.output = new CountingOutputStream(new BufferedOutputStream(output));
+		this.compress = compress;
+
+		// the binary comment marks the file as binary for the transfer tools
+		write("%PDF-1.4\n%\u00E2\u00E3\u00CF\u00D3\n");
+		beginObject(CATALOG);
+		write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+	}
+
+	/**
+	 * Start a page
+	 *
+	 * @param width the width of the page in points
+	 * @param height the height of the page in points
+	 * @throws IllegalStateException if a page is already started
+	 */
+	public void beginPage(double width, double height) {
+		checkOpen();
+		if (content != null)
+			throw new IllegalStateException("The current page must be ended first.");
+
+		content = new StringBuilder();
+		resources = new LinkedHashMap<>();
+		mediaBox = "[0 0 " + number(width) + " " + number(height) + "]";
+	}
+
+	/**
+	 * Draw a symbol on the current page, without its quiet zone
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param x the x coordinate of the left side of the symbol, in points from the left of the page
+	 * @param y the y coordinate of the bottom side of the symbol, in points from the bottom of the page
+	 * @param moduleSize the size of a module in points
+	 * @throws IOException if the XObject of the symbol cannot be written
+	 * @throws IllegalStateException if no page is started
+	 */
+	public void drawSymbol(ModuleSource symbol, double x, double y, double moduleSize) throws IOException {
+		checkOpen();
+		if (content == null)
+			throw new IllegalStateException("A page must be started first.");
+
+		SymbolKey key = new SymbolKey(symbol);
+		Integer xObject = shared.get(key);
+		if (xObject == null) {
+			xObject = writeXObject(symbol);
+			shared.put(key, xObject);
+		}
+
+		resources.put(xObject, "/S" + xObject);
+		content.append("q ").append(number(moduleSize)).append(" 0 0 ").append(number(moduleSize)).append(' ')
+				.append(number(x)).append(' ').append(number(y)).append(" cm /S").append(xObject).append(" Do Q\n");
+	}
+
+	/**
+	 * End the current page and write it
+	 *
+	 * @throws IOException if the page cannot be written
+	 * @throws IllegalStateException if no page is started
+	 */
+	public void endPage() throws IOException {
+		checkOpen();
+		if (content == null)
+			throw new IllegalStateException("A page must be started first.");
+
+		int contents = writeStream("", content.toString().getBytes(StandardCharsets.US_ASCII));
+
+		StringBuilder xObjects = new StringBuilder();
+		for (Map.Entry<Integer, String> resource : resources.entrySet()) {
+			xObjects.append(' ').append(resource.getValue()).append(' ').append(resource.getKey()).append(" 0 R");
+		}
+
+		int page = nextObject++;
+		beginObject(page);
+		write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox " + mediaBox + " /Resources << /XObject <<"
+				+ xObjects + " >> >> /Contents " + contents + " 0 R >>\nendobj\n");
+
+		if (pageCount == pages.length) pages = Arrays.copyOf(pages, pageCount * 2);
+		pages[pageCount++] = page;
+		content = null;
+		resources = null;
+		output.flush();
+	}
+
+	// Getters
+	public int getPageCount() { return pageCount; }
+
+	/**
+	 * Write the page tree, the cross-reference table and the trailer, and close the stream
+	 *
+	 * @throws IOException if the document cannot be written
+	 * @throws IllegalStateException if a page is not ended
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		if (content != null)
+			throw new IllegalStateException("The current page must be ended first.");
+		closed = true;
+
+		beginObject(PAGES);
+		StringBuilder kids = new StringBuilder();
+		for (int i = 0; i < pageCount; i++) kids.append(i == 0 ? "" : " ").append(pages[i]).append(" 0 R");
+		write("<< /Type /Pages /Kids [" + kids + "] /Count " + pageCount + " >>\nendobj\n");
+
+		long xref = output.getCount();
+		StringBuilder table = new StringBuilder();
+		table.append("xref\n0 ").append(nextObject).append("\n0000000000 65535 f \n");
+		for (int i = 1; i < nextObject; i++) {
+			table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[i]));
+			if (table.length() > 8192) {
+				write(table.toString());
+				table.setLength(0);
+			}
+		}
+		write(table.toString());
+		write("trailer\n<< /Size " + nextObject + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+		output.close();
+	}
+
+	/*
+	 * Write the form XObject of a symbol, one unit being a module
+	 */
+	private int writeXObject(ModuleSource symbol) throws IOException {
+		StringWriter path = new StringWriter();
+		new VectorWriter(1, 0).writePdfPath(symbol, path);
+		return writeStream("/Type /XObject /Subtype /Form /BBox [0 0 " + symbol.getWidth() + " "
+				+ symbol.getHeight() + "]", path.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/*
+	 * Write a stream object, compressed if enabled
+	 */
+	private int writeStream(String dictionary, byte[] data) throws IOException {
+		if (compress) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try (DeflaterOutputStream stream = new DeflaterOutputStream(compressed, deflater)) {
+				stream.write(data);
+			} finally {
+				deflater.end();
+			}
+			data = compressed.toByteArray();
+			dictionary += (dictionary.isEmpty() ? "" : " ") + "/Filter /FlateDecode";
+		}
+
+		int object = nextObject++;
+		beginObject(object);
+		write("<< " + dictionary + (dictionary.isEmpty() ? "" : " ") + "/Length " + data.length + " >>\nstream\n");
+		output.write(data);
+		write("\nendstream\nendobj\n");
+		return object;
+	}
+
+	private void beginObject(int object) throws IOException {
+		if (object >= offsets.length) offsets = Arrays.copyOf(offsets, Math.max(object + 1, offsets.length * 2));
+		offsets[object] = output.getCount();
+		write(object + " 0 obj\n");
+	}
+
+	private void write(String text) throws IOException {
+		output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("The document is closed.");
+	}
+
+	/*
+	 * Format a number without exponent, with at most 4 decimals
+	 */
+	private static String number(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+		return BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_EVEN).stripTrailingZeros().toPlainString();
+	}
+
+	/*
+	 * Packed modules of a symbol, to find the XObjects of identical symbols
+	 */
+	private static final class SymbolKey {
+
+		private final int width;
+		private final int height;
+		private final long[] rows;
+		private final int hash;
+
+		SymbolKey(ModuleSource symbol) {
+			this.width = symbol.getWidth();
+			this.height = symbol.getHeight();
+			int words = (width + 63) >>> 6;
+			this.rows = new long[words * height];
+			long[] row = new long[words];
+			for (int y = 0; y < height; y++) {
+				System.arraycopy(symbol.getRow(y, row), 0, rows, y * words, words);
+			}
+			this.hash = 31 * (31 * width + height) + Arrays.hashCode(rows);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof SymbolKey)) return false;
+
+			SymbolKey key = (SymbolKey) o;
+			return hash == key.hash && width == key.width && height == key.height && Arrays.equals(rows, key.rows);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/*
+	 * Stream counting the written bytes, which are the offsets of the objects
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+
+		private final OutputStream output;
+		private long count;
+
+		CountingOutputStream(OutputStream output) {
+			this.output = output;
+		}
+
+		long getCount() { return count; }
+
+		@Override
+		public void write(int b) throws IOException {
+			output.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			output.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			output.close();
+		}
+	}
+}
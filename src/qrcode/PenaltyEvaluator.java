@@ -0,0 +1,324 @@
+package qrcode;
+
+/**
+ * Penalty evaluation of a packed QR code, following the four rules of ISO/IEC 18004:2000(E).
+ *
+ * The scores are exactly the ones computed by MatrixConstruction#evaluate(int[][]), but instead of comparing
+ * ARGB integers module by module, every rule works on whole words of the packed lines and columns:
+ *      - N1 (runs): the run boundaries of a line are the bits of (line XOR line shifted by one), which are visited
+ *        with a bit-scan (Long.numberOfTrailingZeros)
+ *      - N2 (2x2 blocks): the blocks are the AND of the equalities of two adjacent lines and of their shifted copies
+ *      - N3 (finder-like patterns): a sliding window over the bits of each line and column, the white border of
+ *        the QR code being added virtually instead of allocating a bordered copy
+ *      - N4 (dark ratio): a Long.bitCount over the packed words
+ *
+ * The scans of the rules N1 and N3 also have a word-parallel implementation (see WordParallelScans) which tests
+ * the 64 modules of a word at once. It is used by default, the scalar scans described above being kept as a
+ * fallback which can be selected at runtime with the SCANS setting or the system property
+ * -Dqrcode.penalty.scans=scalar.
+ *
+ * Since the penalty is a sum of non-negative scores, the evaluation can also be given an upper bound (usually the
+ * best penalty found so far), in which case the rules are evaluated from the cheapest to the most expensive one
+ * and the evaluation stops as soon as the partial score exceeds the bound.
+ *
+ * @see MatrixConstruction#evaluate(int[][])
+ */
+public final class PenaltyEvaluator {
+
+	/**
+	 * Implementations of the scans of the rules N1 and N3
+	 */
+	public enum Scans {
+		SCALAR,
+		WORD_PARALLEL
+	}
+
+	/**
+	 * The implementation used for the scans of the rules N1 and N3, read from the system property
+	 * qrcode.penalty.scans ("scalar" or "word_parallel", the default).
+	 */
+	public static Scans SCANS = "scalar".equalsIgnoreCase(System.getProperty("qrcode.penalty.scans")) ?
+			Scans.SCALAR : Scans.WORD_PARALLEL;
+
+	/*
+	 * Finder-like patterns searched by the rule N3 in the reading order (most significant bit first) with the
+	 * same 12 modules window as MatrixConstruction#evaluate(int[][]): 4 light modules, the 1:1:3:1:1 pattern and
+	 * one more light module, on either side.
+	 */
+	private static final int FINDER_WINDOW_SIZE = 12;
+	private static final int FINDER_WINDOW_MASK = (1 << FINDER_WINDOW_SIZE) - 1;
+	private static final int FINDER_PATTERN_BEFORE = 0b0000_1011101_0;
+	private static final int FINDER_PATTERN_AFTER  = 0b0_1011101_0000;
+
+	private PenaltyEvaluator() {}
+
+	/**
+	 * Compute the penalty score of a packed QR code
+	 *
+	 * @param symbol the QR code
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public static int evaluate(BitMatrix symbol) {
+		return evaluate(symbol, symbol.transpose());
+	}
+
+	/**
+	 * Compute the penalty score of a packed QR code with an already transposed copy of it, which allows callers to
+	 * reuse the matrix used for the columns.
+	 *
+	 * @param symbol the QR code
+	 * @param columns the transposed QR code
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public static int evaluate(BitMatrix symbol, BitMatrix columns) {
+		return runsPenalty(symbol) + runsPenalty(columns)
+				+ blocksPenalty(symbol)
+				+ finderPenalty(symbol) + finderPenalty(columns)
+				+ balancePenalty(symbol);
+	}
+
+	/**
+	 * Compute the penalty score of a packed QR code, stopping as soon as the score exceeds a bound. The rules are
+	 * evaluated from the cheapest to the most expensive one: N4, N2, N1 and N3.
+	 *
+	 * @param symbol the QR code
+	 * @param columns a matrix where the transposed QR code is written if the columns need to be evaluated
+	 * @param bound the maximum score of interest
+	 * @return the penalty score if it is lower or equal to the bound, otherwise a partial score greater than the
+	 *         bound
+	 */
+	public static int evaluate(BitMatrix symbol, BitMatrix columns, int bound) {
+		return completePenalty(symbol, columns, cheapPenalty(symbol), bound);
+	}
+
+	/**
+	 * Compute the penalty of the two cheapest rules (N4 and N2), which only need a few operations per word and no
+	 * transposed copy. It is a lower bound of the full penalty score and a good predictor of it.
+	 *
+	 * @param symbol the QR code
+	 * @return the penalty of the rules N2 and N4
+	 */
+	public static int cheapPenalty(BitMatrix symbol) {
+		return balancePenalty(symbol) + blocksPenalty(symbol);
+	}
+
+	/**
+	 * Complete the penalty of the cheap rules with the penalty of the expensive ones (N1 and N3), stopping as soon
+	 * as the score exceeds a bound.
+	 *
+	 * @param symbol the QR code
+	 * @param columns a matrix where the transposed QR code is written if the columns need to be evaluated
+	 * @param cheapPenalty the penalty of the cheap rules computed with cheapPenalty(BitMatrix)
+	 * @param bound the maximum score of interest
+	 * @return the penalty score if it is lower or equal to the bound, otherwise a partial score greater than the
+	 *         bound
+	 * @see PenaltyEvaluator#cheapPenalty(BitMatrix)
+	 */
+	public static int completePenalty(BitMatrix symbol, BitMatrix columns, int cheapPenalty, int bound) {
+		int penalty = cheapPenalty;
+		if (penalty > bound) return penalty;
+
+		penalty += runsPenalty(symbol);
+		if (penalty > bound) return penalty;
+		penalty += finderPenalty(symbol);
+		if (penalty > bound) return penalty;
+
+		// the transposition is only done once the lines did not exceed the bound
+		symbol.transposeInto(columns);
+		penalty += runsPenalty(columns);
+		if (penalty > bound) return penalty;
+		return penalty + finderPenalty(columns);
+	}
+
+	/**
+	 * Estimate the penalty score of a packed QR code by only evaluating one line (and column) out of step with
+	 * the rules N1, N2 and N3, the rule N4 being always evaluated on the whole QR code. The estimation is not
+	 * comparable with a full penalty score, only with other estimations made with the same step.
+	 *
+	 * @param symbol the QR code
+	 * @param columns a matrix where the transposed QR code is written
+	 * @param step the step between two evaluated lines, 1 evaluates every line
+	 * @return the estimated penalty score
+	 */
+	public static int sampledPenalty(BitMatrix symbol, BitMatrix columns, int step) {
+		if (step < 1)
+			throw new IllegalArgumentException("The sampling step must be positive.");
+
+		symbol.transposeInto(columns);
+		return balancePenalty(symbol)
+				+ blocksPenalty(symbol, 0, step)
+				+ runsPenalty(symbol, 0, step) + runsPenalty(columns, 0, step)
+				+ finderPenalty(symbol, 0, step) + finderPenalty(columns, 0, step);
+	}
+
+	/**
+	 * Rule N1: penalty for the runs of 5 or more modules of the same color in the lines of a matrix
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @return the penalty of the lines
+	 */
+	public static int runsPenalty(BitMatrix matrix) {
+		return runsPenalty(matrix, 0, 1);
+	}
+
+	/**
+	 * Rule N1: penalty for the runs of 5 or more modules of the same color in the lines of a matrix
+	 *
+	 * Only the lines first, first + step, first + 2 * step, ... are evaluated.
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @param first the first line to evaluate
+	 * @param step the step between two evaluated lines
+	 * @return the penalty of the lines
+	 */
+	static int runsPenalty(BitMatrix matrix, int first, int step) {
+		if (SCANS == Scans.WORD_PARALLEL) return WordParallelScans.runsPenalty(matrix, first, step);
+
+		int length = matrix.getHeight();
+		int wordsPerLine = matrix.getWordsPerLine();
+		long[] words = matrix.getWords();
+		int penalty = 0;
+
+		for (int x = first; x < matrix.getWidth(); x += step) {
+			int offset = x * wordsPerLine;
+			int runStart = 0;
+			long previous = 0;
+			for (int w = 0; w < wordsPerLine; w++) {
+				long current = words[offset + w];
+				// a bit is set at every module which has a different color than the module before it
+				long boundaries = current ^ (current << 1 | previous >>> 63);
+				if (w == 0) boundaries &= ~1L; // the first module of the line always starts a run
+				if (w == wordsPerLine - 1 && (length & 63) != 0) boundaries &= (1L << length) - 1;
+
+				while (boundaries != 0) {
+					int boundary = (w << 6) + Long.numberOfTrailingZeros(boundaries);
+					int run = boundary - runStart;
+					if (run >= 5) penalty += MatrixConstruction.PENALITY_N1 + (run - 5);
+					runStart = boundary;
+					boundaries &= boundaries - 1;
+				}
+				previous = current;
+			}
+
+			int run = length - runStart;
+			if (run >= 5) penalty += MatrixConstruction.PENALITY_N1 + (run - 5);
+		}
+
+		return penalty;
+	}
+
+	/**
+	 * Rule N2: penalty for the 2x2 blocks of modules of the same color
+	 *
+	 * @param matrix the packed matrix
+	 * @return the penalty of the blocks
+	 */
+	public static int blocksPenalty(BitMatrix matrix) {
+		return blocksPenalty(matrix, 0, 1);
+	}
+
+	/**
+	 * Rule N2: penalty for the 2x2 blocks of modules of the same color
+	 *
+	 * Only the lines first, first + step, first + 2 * step, ... are evaluated. For the blocks, these are the first lines of the blocks.
+	 *
+	 * @param matrix the packed matrix
+	 * @param first the first line to evaluate
+	 * @param step the step between two evaluated lines
+	 * @return the penalty of the blocks
+	 */
+	static int blocksPenalty(BitMatrix matrix, int first, int step) {
+		int length = matrix.getHeight();
+		int wordsPerLine = matrix.getWordsPerLine();
+		long[] words = matrix.getWords();
+		int blocks = 0;
+
+		for (int x = first; x < matrix.getWidth() - 1; x += step) {
+			int a = x * wordsPerLine;
+			int b = a + wordsPerLine;
+			for (int w = 0; w < wordsPerLine; w++) {
+				long lineA = words[a + w];
+				long lineB = words[b + w];
+				long nextA = w + 1 < wordsPerLine ? words[a + w + 1] : 0;
+				long nextB = w + 1 < wordsPerLine ? words[b + w + 1] : 0;
+
+				// modules y + 1 of both lines, aligned on the modules y
+				long shiftedA = lineA >>> 1 | nextA << 63;
+				long shiftedB = lineB >>> 1 | nextB << 63;
+
+				long same = ~(lineA ^ lineB) & ~(lineA ^ shiftedA) & ~(lineB ^ shiftedB);
+
+				// a block starts on every module except the last one of the line
+				int validModules = Math.min(64, length - 1 - (w << 6));
+				if (validModules <= 0) break;
+				if (validModules < 64) same &= (1L << validModules) - 1;
+
+				blocks += Long.bitCount(same);
+			}
+		}
+
+		return blocks * MatrixConstruction.PENALITY_N2;
+	}
+
+	/**
+	 * Rule N3: penalty for the finder-like patterns in the lines of a matrix. The matrix is considered to be
+	 * surrounded by a border of light modules.
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @return the penalty of the lines
+	 */
+	public static int finderPenalty(BitMatrix matrix) {
+		return finderPenalty(matrix, 0, 1);
+	}
+
+	/**
+	 * Rule N3: penalty for the finder-like patterns in the lines of a matrix. The matrix is considered to be
+	 * surrounded by a border of light modules.
+	 *
+	 * Only the lines first, first + step, first + 2 * step, ... are evaluated.
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @param first the first line to evaluate
+	 * @param step the step between two evaluated lines
+	 * @return the penalty of the lines
+	 */
+	static int finderPenalty(BitMatrix matrix, int first, int step) {
+		if (SCANS == Scans.WORD_PARALLEL) return WordParallelScans.finderPenalty(matrix, first, step);
+
+		int length = matrix.getHeight();
+		int wordsPerLine = matrix.getWordsPerLine();
+		long[] words = matrix.getWords();
+		int patterns = 0;
+
+		for (int x = first; x < matrix.getWidth(); x += step) {
+			int offset = x * wordsPerLine;
+			// the window already contains the light module of the border before the line
+			int window = 0;
+			int filled = 1;
+			for (int y = 0; y <= length; y++) {
+				// the module after the line is the light module of the border
+				int bit = y < length ? (int) (words[offset + (y >>> 6)] >>> y) & 1 : 0;
+				window = (window << 1 | bit) & FINDER_WINDOW_MASK;
+				if (++filled >= FINDER_WINDOW_SIZE &&
+						(window == FINDER_PATTERN_BEFORE || window == FINDER_PATTERN_AFTER))
+					patterns++;
+			}
+		}
+
+		return patterns * MatrixConstruction.PENALITY_N3;
+	}
+
+	/**
+	 * Rule N4: penalty for the deviation of the proportion of dark modules from 50%
+	 *
+	 * @param matrix the packed matrix
+	 * @return the penalty of the dark modules proportion
+	 */
+	public static int balancePenalty(BitMatrix matrix) {
+		int modulesTotal = matrix.getWidth() * matrix.getHeight();
+		int darkModulesTotal = matrix.bitCount();
+
+		int fivePercentVariances = Math.abs(darkModulesTotal * 2 - modulesTotal) * 10 / modulesTotal;
+		return fivePercentVariances * MatrixConstruction.PENALITY_N4;
+	}
+}
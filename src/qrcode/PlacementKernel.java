@@ -0,0 +1,129 @@
+package qrcode;
+
+import java.nio.LongBuffer;
+
+/**
+ * Rendering of the QR codes of one version, correction level and mask, specialized once and cached.
+ *
+ * Everything which does not depend on the data is folded into the base of the kernel: the function patterns, the
+ * format information and the mask applied on a data region without any dark bit. Since masking is a XOR, a data
+ * bit set to true only has to invert its module in a copy of the base, so that rendering a QR code is:
+ *
+ * 		copy the base, then for every true data bit i: words[order[i] / 64] ^= 1L << order[i]
+ *
+ * which leaves no mask predicate, no bound nor skip test and no switch in the loop, the placement order being the
+ * one of the version template.
+ *
+ * Kernels are an optional engine for MatrixConstruction#renderQRCodeMatrix(int, boolean[], int), enabled with the
+ * ENABLED setting or the system property -Dqrcode.placement.kernels=true. They can also be used directly to render
+ * packed matrices.
+ *
+ * @see VersionTemplate
+ */
+public final class PlacementKernel {
+
+	/**
+	 * Whether MatrixConstruction#renderQRCodeMatrix(int, boolean[], int) renders through the kernels (with the
+	 * extensions enabled)
+	 */
+	public static boolean ENABLED = Boolean.getBoolean("qrcode.placement.kernels");
+
+	private static final int MASK_AMOUNT = 8;
+
+	/*
+	 * Kernels are created lazily, indexed by version, correction level and mask (version 0 is unused).
+	 * As for the templates, racing threads can at worst create the same kernel twice, which is harmless.
+	 */
+	private static final PlacementKernel[][][] KERNELS =
+			new PlacementKernel[41][Extensions.QRCodeInfos.CorrectionLevel.values().length][MASK_AMOUNT];
+
+	private final int size;
+	private final long[] base;
+	private final int[] order;
+
+	private PlacementKernel(VersionTemplate template, Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		this.size = template.getSize();
+		this.base = template.getFunctionPatterns().copy()
+				.or(template.getFormatPlane(level, mask))
+				.xor(template.getMaskPlane(mask))
+				.getWords();
+		this.order = template.getPlacementOrder();
+	}
+
+	/**
+	 * Get the kernel of a version, a correction level and a mask, creating it the first time it is requested
+	 *
+	 * @param version the version of the QR code, between 1 and 40 included
+	 * @param level the error correction level of the QR code
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the kernel
+	 */
+	public static PlacementKernel of(int version, Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		if (mask < 0 || mask >= MASK_AMOUNT)
+			throw new IllegalArgumentException("The mask must be between 0 and 7 included.");
+
+		VersionTemplate template = VersionTemplate.of(version);
+		PlacementKernel kernel = KERNELS[version][level.ordinal()][mask];
+		if (kernel == null) {
+			kernel = new PlacementKernel(template, level, mask);
+			KERNELS[version][level.ordinal()][mask] = kernel;
+		}
+		return kernel;
+	}
+
+	// Getters
+	public int getSize() { return size; }
+
+	/**
+	 * Render a QR code in a new packed matrix
+	 *
+	 * @param data the data bits, extra bits being ignored
+	 * @return the packed QR code
+	 */
+	public BitMatrix render(boolean[] data) {
+		BitMatrix symbol = new BitMatrix(size);
+		renderInto(data, symbol);
+		return symbol;
+	}
+
+	/**
+	 * Render a QR code in an existing packed matrix, whose content is overwritten
+	 *
+	 * @param data the data bits, extra bits being ignored
+	 * @param symbol the packed matrix of the size of the version
+	 */
+	public void renderInto(boolean[] data, BitMatrix symbol) {
+		if (symbol.getWidth() != size || symbol.getHeight() != size)
+			throw new IllegalArgumentException("The matrix must have the size of the version.");
+
+		System.arraycopy(base, 0, symbol.getWords(), 0, base.length);
+		MatrixConstruction.placeData(symbol, order, data);
+	}
+
+	/**
+	 * Render a QR code in a buffer of packed words, laid out like the words of a BitMatrix of the version
+	 *
+	 * @param data the data bits, extra bits being ignored
+	 * @param words the buffer to render the QR code to
+	 * @param offset the index of the first word of the QR code in the buffer
+	 */
+	void renderInto(boolean[] data, LongBuffer words, int offset) {
+		for (int i = 0; i < base.length; i++) {
+			words.put(offset + i, base[i]);
+		}
+
+		// same placement as MatrixConstruction#placeData(BitMatrix, int[], boolean[]), on words outside of the heap
+		int length = Math.min(order.length, data.length);
+		for (int i = 0; i < length; i++) {
+			if (data[i]) {
+				int index = offset + (order[i] >>> 6);
+				words.put(index, words.get(index) ^ 1L << order[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the amount of words of the QR codes of the kernel
+	 */
+	int getWordCount() { return base.length; }
+}
@@ -0,0 +1,203 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG encoder writing symbols as 1-bit grayscale images, without any BufferedImage.
+ *
+ * The image is streamed scanline by scanline: every row of modules is expanded once to a scanline (with the scale
+ * and the quiet zone applied on the fly), which is then deflated as many times as the scale, and the compressed
+ * data is written in IDAT chunks of at most CHUNK_SIZE bytes. The memory used only depends on the width of the
+ * image, a 177 modules QR code at scale 10 taking a scanline of 233 bytes.
+ *
+ * A writer only holds its settings and can be shared between threads:
+ *
+ * 		new PngWriter(10, 4, Deflater.BEST_COMPRESSION).write(ModuleSource.of(version, data), outputStream);
+ *
+ * @see ModuleSource
+ */
+public final class PngWriter {
+
+	/**
+	 * Maximum size of the data of the IDAT chunks
+	 */
+	public static final int CHUNK_SIZE = 1 << 15;
+
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+	private final int scale;
+	private final int quietZone;
+	private final int compressionLevel;
+
+	/**
+	 * @param scale the size of a module in pixels
+	 * @param quietZone the size of the quiet zone around the symbol in modules (usually 4 for QR codes)
+	 * @param compressionLevel the deflate level, between 0 and 9 included or Deflater.DEFAULT_COMPRESSION
+	 */
+	public PngWriter(int scale, int quietZone, int compressionLevel) {
+		if (scale < 1)
+			throw new IllegalArgumentException("The scale must be positive.");
+		if (quietZone < 0)
+			throw new IllegalArgumentException("The quiet zone must not be negative.");
+		if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION)
+			throw new IllegalArgumentException("The compression level must be between 0 and 9 included.");
+
+		this.scale = scale;
+		this.quietZone = quietZone;
+		this.compressionLevel = compressionLevel;
+	}
+
+	// Getters
+	public int getScale() { return scale; }
+	public int getQuietZone() { return quietZone; }
+	public int getCompressionLevel() { return compressionLevel; }
+
+	/**
+	 * Write a symbol as a PNG image in a channel
+	 *
+	 * @see PngWriter#write(ModuleSource, OutputStream)
+	 */
+	public void write(ModuleSource symbol, WritableByteChannel channel) throws IOException {
+		write(symbol, Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Write a matrix as a PNG image in a stream
+	 *
+	 * @see PngWriter#write(ModuleSource, OutputStream)
+	 */
+	public void write(int[][] matrix, OutputStream output) throws IOException {
+		write(BitMatrix.fromMatrix(matrix), output);
+	}
+
+	/**
+	 * Write a symbol as a PNG image in a stream, which is flushed but not closed
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param output the stream to write the image to
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void write(ModuleSource symbol, OutputStream output) throws IOException {
+		int width = (symbol.getWidth() + 2 * quietZone) * scale;
+		int height = (symbol.getHeight() + 2 * quietZone) * scale;
+
+		output.write(SIGNATURE);
+		ChunkOutputStream chunks = new ChunkOutputStream(output);
+
+		// 1-bit grayscale, deflate compression, adaptive filtering, no interlace
+		chunks.begin("IHDR");
+		writeInt(chunks, width);
+		writeInt(chunks, height);
+		chunks.write(new byte[] {1, 0, 0, 0, 0});
+		chunks.end();
+
+		// the first byte of a scanline is its filter type (0, none), then a bit per pixel with 1 being white
+		byte[] light = new byte[1 + (width + 7) / 8];
+		Arrays.fill(light, 1, light.length, (byte) 0xFF);
+		light[0] = 0;
+		byte[] scanline = new byte[light.length];
+		long[] row = new long[(symbol.getWidth() + 63) >>> 6];
+
+		Deflater deflater = new Deflater(compressionLevel);
+		try {
+			chunks.begin("IDAT");
+			DeflaterOutputStream deflated = new DeflaterOutputStream(chunks, deflater, 8192);
+			for (int i = 0; i < quietZone * scale; i++) deflated.write(light);
+			for (int y = 0; y < symbol.getHeight(); y++) {
+				expand(symbol.getRow(y, row), symbol.getWidth(), scanline, light);
+				for (int i = 0; i < scale; i++) deflated.write(scanline);
+			}
+			for (int i = 0; i < quietZone * scale; i++) deflated.write(light);
+			deflated.finish();
+			chunks.end();
+		} finally {
+			deflater.end();
+		}
+
+		chunks.begin("IEND");
+		chunks.end();
+		output.flush();
+	}
+
+	/*
+	 * Expand a packed row of modules to a scanline, dark modules clearing the bits of their pixels
+	 */
+	private void expand(long[] row, int modules, byte[] scanline, byte[] light) {
+		System.arraycopy(light, 0, scanline, 0, light.length);
+
+		for (int x = 0; x < modules; x++) {
+			if ((row[x >>> 6] & 1L << x) == 0) continue;
+
+			int start = (x + quietZone) * scale;
+			for (int pixel = start; pixel < start + scale; pixel++) {
+				scanline[1 + (pixel >>> 3)] &= ~(0x80 >>> (pixel & 7));
+			}
+		}
+	}
+
+	private static void writeInt(OutputStream output, int value) throws IOException {
+		output.write(value >>> 24);
+		output.write(value >>> 16);
+		output.write(value >>> 8);
+		output.write(value);
+	}
+
+	/*
+	 * Stream of the data of the chunks, which are written with their length, type and CRC. The data of a chunk is
+	 * buffered and split in several chunks of the same type when it exceeds CHUNK_SIZE.
+	 */
+	private static final class ChunkOutputStream extends OutputStream {
+
+		private final OutputStream output;
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private final CRC32 crc = new CRC32();
+		private byte[] type;
+		private int length;
+
+		ChunkOutputStream(OutputStream output) {
+			this.output = output;
+		}
+
+		void begin(String chunkType) {
+			this.type = chunkType.getBytes(StandardCharsets.US_ASCII);
+			this.length = 0;
+		}
+
+		void end() throws IOException {
+			writeInt(output, length);
+			crc.reset();
+			crc.update(type);
+			crc.update(buffer, 0, length);
+			output.write(type);
+			output.write(buffer, 0, length);
+			writeInt(output, (int) crc.getValue());
+			length = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (length == buffer.length) end();
+			buffer[length++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (length == buffer.length) end();
+				int count = Math.min(len, buffer.length - length);
+				System.arraycopy(b, off, buffer, length, count);
+				length += count;
+				off += count;
+				len -= count;
+			}
+		}
+	}
+}
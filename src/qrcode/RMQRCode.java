@@ -0,0 +1,455 @@
+package qrcode;
+
+import java.util.Arrays;
+
+import reedsolomon.ErrorCorrectionEncoding;
+
+/**
+ * Rectangular Micro QR codes (rMQR, from R7x43 to R17x139), following ISO/IEC 23941:2022.
+ *
+ * An rMQR code is as high as 7 to 17 modules and as wide as 27 to 139 modules, so that it fits narrow labels
+ * without wasting the space that a square QR code would need. Its matrices are int[width][height] matrices indexed
+ * like the QR codes (matrix[x][y]) and can be rendered and written with the Helpers as any other matrix.
+ *
+ * Compared to QR codes, an rMQR code has:
+ *      - a finder pattern in the top left corner, a 5x5 finder sub pattern in the bottom right corner and corner
+ *        finder patterns in the two other corners
+ *      - timing patterns on its four edges and on the columns of its alignment patterns, which are 3x3 patterns
+ *        on the top and bottom edges
+ *      - two copies of the format information (the version and the correction level), each one with its own mask
+ *      - a single mask (the QR code mask 4), hence no mask evaluation
+ *      - only the MEDIUM and HIGH correction levels
+ *
+ * The data is encoded in the most compact of the numeric, alphanumeric and byte modes which can encode the input.
+ *
+ * @see MicroQRCode
+ */
+public final class RMQRCode {
+
+	/**
+	 * The 32 versions of rMQR codes, in the order of their version indicator. Each version has the lengths of the
+	 * character count of the numeric, alphanumeric and byte modes and its blocks for the MEDIUM and HIGH levels,
+	 * given as {amount of blocks, codewords per block, data codewords per block} (see Tables 3 and 8 of
+	 * ISO/IEC 23941:2022).
+	 */
+	public enum Version {
+		R7x43  (7, 43,  new int[] {4, 3, 3}, new int[][] {{1, 13, 6}},                new int[][] {{1, 13, 3}}),
+		R7x59  (7, 59,  new int[] {5, 5, 4}, new int[][] {{1, 21, 12}},               new int[][] {{1, 21, 7}}),
+		R7x77  (7, 77,  new int[] {6, 5, 5}, new int[][] {{1, 32, 20}},               new int[][] {{1, 32, 10}}),
+		R7x99  (7, 99,  new int[] {7, 6, 5}, new int[][] {{1, 44, 28}},               new int[][] {{1, 44, 14}}),
+		R7x139 (7, 139, new int[] {7, 6, 6}, new int[][] {{1, 68, 44}},               new int[][] {{2, 34, 12}}),
+		R9x43  (9, 43,  new int[] {5, 5, 4}, new int[][] {{1, 21, 12}},               new int[][] {{1, 21, 7}}),
+		R9x59  (9, 59,  new int[] {6, 5, 5}, new int[][] {{1, 33, 21}},               new int[][] {{1, 33, 11}}),
+		R9x77  (9, 77,  new int[] {7, 6, 5}, new int[][] {{1, 49, 31}},               new int[][] {{1, 24, 8}, {1, 25, 9}}),
+		R9x99  (9, 99,  new int[] {7, 6, 6}, new int[][] {{1, 66, 42}},               new int[][] {{2, 33, 11}}),
+		R9x139 (9, 139, new int[] {8, 7, 6}, new int[][] {{1, 49, 31}, {1, 50, 32}},  new int[][] {{3, 33, 11}}),
+		R11x27 (11, 27, new int[] {4, 4, 3}, new int[][] {{1, 15, 7}},                new int[][] {{1, 15, 5}}),
+		R11x43 (11, 43, new int[] {6, 5, 5}, new int[][] {{1, 31, 19}},               new int[][] {{1, 31, 11}}),
+		R11x59 (11, 59, new int[] {7, 6, 5}, new int[][] {{1, 47, 31}},               new int[][] {{1, 23, 7}, {1, 24, 8}}),
+		R11x77 (11, 77, new int[] {7, 6, 6}, new int[][] {{1, 67, 43}},               new int[][] {{1, 33, 11}, {1, 34, 12}}),
+		R11x99 (11, 99, new int[] {8, 7, 6}, new int[][] {{1, 44, 28}, {1, 45, 29}},  new int[][] {{1, 44, 14}, {1, 45, 15}}),
+		R11x139(11, 139, new int[] {8, 7, 7}, new int[][] {{2, 66, 42}},              new int[][] {{3, 44, 14}}),
+		R13x27 (13, 27, new int[] {5, 5, 4}, new int[][] {{1, 21, 12}},               new int[][] {{1, 21, 7}}),
+		R13x43 (13, 43, new int[] {6, 6, 5}, new int[][] {{1, 41, 27}},               new int[][] {{1, 41, 13}}),
+		R13x59 (13, 59, new int[] {7, 6, 6}, new int[][] {{1, 60, 38}},               new int[][] {{2, 30, 10}}),
+		R13x77 (13, 77, new int[] {7, 7, 6}, new int[][] {{1, 42, 26}, {1, 43, 27}},  new int[][] {{1, 42, 14}, {1, 43, 15}}),
+		R13x99 (13, 99, new int[] {8, 7, 7}, new int[][] {{1, 56, 36}, {1, 57, 37}},  new int[][] {{1, 37, 11}, {2, 38, 12}}),
+		R13x139(13, 139, new int[] {8, 8, 7}, new int[][] {{2, 55, 35}, {1, 56, 36}}, new int[][] {{2, 41, 13}, {2, 42, 14}}),
+		R15x43 (15, 43, new int[] {7, 6, 6}, new int[][] {{1, 51, 33}},               new int[][] {{1, 25, 7}, {1, 26, 8}}),
+		R15x59 (15, 59, new int[] {7, 7, 6}, new int[][] {{1, 74, 48}},               new int[][] {{2, 37, 13}}),
+		R15x77 (15, 77, new int[] {8, 7, 7}, new int[][] {{1, 51, 33}, {1, 52, 34}},  new int[][] {{2, 34, 10}, {1, 35, 11}}),
+		R15x99 (15, 99, new int[] {8, 7, 7}, new int[][] {{2, 68, 44}},               new int[][] {{4, 34, 12}}),
+		R15x139(15, 139, new int[] {9, 8, 7}, new int[][] {{2, 66, 42}, {1, 67, 43}}, new int[][] {{1, 39, 13}, {4, 40, 14}}),
+		R17x43 (17, 43, new int[] {7, 6, 6}, new int[][] {{1, 61, 39}},               new int[][] {{1, 30, 10}, {1, 31, 11}}),
+		R17x59 (17, 59, new int[] {8, 7, 6}, new int[][] {{2, 44, 28}},               new int[][] {{2, 44, 14}}),
+		R17x77 (17, 77, new int[] {8, 7, 7}, new int[][] {{2, 61, 39}},               new int[][] {{1, 40, 12}, {2, 41, 13}}),
+		R17x99 (17, 99, new int[] {8, 8, 7}, new int[][] {{2, 53, 33}, {1, 54, 34}},  new int[][] {{4, 40, 14}}),
+		R17x139(17, 139, new int[] {9, 8, 8}, new int[][] {{4, 58, 38}},              new int[][] {{2, 38, 12}, {4, 39, 13}});
+
+		private final int height;
+		private final int width;
+		private final int[] countBits;
+		private final int[][][] blocks;
+
+		Version(int height, int width, int[] countBits, int[][] mediumBlocks, int[][] highBlocks) {
+			this.height = height;
+			this.width = width;
+			this.countBits = countBits;
+			this.blocks = new int[][][] {mediumBlocks, highBlocks};
+		}
+
+		// Getters
+		public int getHeight() { return height; }
+		public int getWidth() { return width; }
+
+		/**
+		 * @return the centers of the alignment patterns, which are also the columns of the vertical timing patterns
+		 */
+		public int[] getAlignmentColumns() {
+			switch (width) {
+				case 43: return new int[] {21};
+				case 59: return new int[] {19, 39};
+				case 77: return new int[] {25, 51};
+				case 99: return new int[] {23, 49, 75};
+				case 139: return new int[] {27, 55, 83, 111};
+				default: return new int[0];
+			}
+		}
+
+		/**
+		 * @param level the error correction level, MEDIUM or HIGH
+		 * @return the amount of data codewords of the version
+		 */
+		public int getDataLength(Extensions.QRCodeInfos.CorrectionLevel level) {
+			int length = 0;
+			for (int[] group : getBlocks(level)) length += group[0] * group[2];
+			return length;
+		}
+
+		/**
+		 * @return the amount of codewords (data and error correction) of the version
+		 */
+		public int getCodeWordsLength() {
+			int length = 0;
+			for (int[] group : blocks[0]) length += group[0] * group[1];
+			return length;
+		}
+
+		int[][] getBlocks(Extensions.QRCodeInfos.CorrectionLevel level) {
+			return blocks[levelBit(level)];
+		}
+	}
+
+	/*
+	 * Masks of the format information next to the finder pattern and next to the finder sub pattern
+	 */
+	private static final int FINDER_FORMAT_MASK = 0b011111101010110010;
+	private static final int SUB_FINDER_FORMAT_MASK = 0b100000101001111011;
+
+	/*
+	 * The single mask of rMQR codes is the QR code mask 4
+	 */
+	private static final int MASK = 4;
+
+	private static final int NUMERIC = 0;
+	private static final int ALPHANUMERIC = 1;
+	private static final int BYTE = 2;
+	private static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	private RMQRCode() {}
+
+	/**
+	 * Find the smallest version (in area) fitting in the given dimensions which can encode a whole input
+	 *
+	 * @param input the string to encode
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @param maxHeight the maximum height of the symbol, in modules
+	 * @param maxWidth the maximum width of the symbol, in modules
+	 * @return the smallest version or null if the input does not fit in any version
+	 */
+	public static Version fit(String input, Extensions.QRCodeInfos.CorrectionLevel level, int maxHeight, int maxWidth) {
+		int mode = mode(input);
+		int[] bytes = mode == BYTE ? DataEncoding.encodeString(input, Integer.MAX_VALUE) : null;
+		int length = mode == BYTE ? bytes.length : input.length();
+
+		Version best = null;
+		for (Version version : Version.values()) {
+			if (version.height > maxHeight || version.width > maxWidth) continue;
+			if (length >= 1 << version.countBits[mode]) continue;
+			if (3 + version.countBits[mode] + segmentBits(mode, length) > version.getDataLength(level) * 8) continue;
+
+			if (best == null || version.height * version.width < best.height * best.width) best = version;
+		}
+		return best;
+	}
+
+	/*
+	 * =======================================================================
+	 *
+	 * **************************** DATA ENCODING ****************************
+	 *
+	 * =======================================================================
+	 */
+
+	/**
+	 * Encode a string in the most compact mode (numeric, alphanumeric or byte mode) and add the error correction.
+	 *
+	 * @param input the string to encode, truncated to the capacity of the version
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static boolean[] encode(String input, Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int dataLength = version.getDataLength(level);
+		int capacity = dataLength * 8;
+
+		int mode = mode(input);
+		int[] bytes = mode == BYTE ? DataEncoding.encodeString(input, Integer.MAX_VALUE) : null;
+		int length = mode == BYTE ? bytes.length : input.length();
+		int countBits = version.countBits[mode];
+
+		// truncate the input to the capacity of the version
+		length = Math.min(length, (1 << countBits) - 1);
+		while (length > 0 && 3 + countBits + segmentBits(mode, length) > capacity) length--;
+
+		boolean[] bits = new boolean[capacity];
+		int position = append(bits, 0, mode + 1, 3);
+		position = append(bits, position, length, countBits);
+		switch (mode) {
+			case NUMERIC:
+				for (int i = 0; i < length; i += 3) {
+					int digits = Math.min(3, length - i);
+					position = append(bits, position, Integer.parseInt(input.substring(i, i + digits)), digits * 3 + 1);
+				}
+				break;
+			case ALPHANUMERIC:
+				for (int i = 0; i < length; i += 2) {
+					int first = ALPHANUMERIC_CHARSET.indexOf(input.charAt(i));
+					if (i + 1 < length)
+						position = append(bits, position, first * 45 + ALPHANUMERIC_CHARSET.indexOf(input.charAt(i + 1)), 11);
+					else
+						position = append(bits, position, first, 6);
+				}
+				break;
+			default:
+				for (int i = 0; i < length; i++) position = append(bits, position, bytes[i], 8);
+		}
+
+		// the terminator and the bits up to the next codeword are light, then come the padding codewords
+		int[] data = new int[dataLength];
+		for (int i = 0; i < position; i++) {
+			if (bits[i]) data[i / 8] |= 0x80 >> (i % 8);
+		}
+		for (int i = (Math.min(position + 3, capacity) + 7) / 8, k = 0; i < dataLength; i++, k++) {
+			data[i] = k % 2 == 0 ? 0b11101100 : 0b00010001;
+		}
+
+		return DataEncoding.bytesToBinaryArray(addErrorCorrection(data, version, level));
+	}
+
+	/*
+	 * Compute the error correction of every block and interleave the blocks, as in
+	 * Extensions#addErrorCorrection(int[], QRCodeInfos)
+	 */
+	private static int[] addErrorCorrection(int[] data, Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int[][] groups = version.getBlocks(level);
+		int blocks = 0;
+		for (int[] group : groups) blocks += group[0];
+
+		int[][] dataBlocks = new int[blocks][];
+		int[][] eccBlocks = new int[blocks][];
+		for (int g = 0, b = 0, offset = 0; g < groups.length; g++) {
+			for (int i = 0; i < groups[g][0]; i++, b++) {
+				dataBlocks[b] = Arrays.copyOfRange(data, offset, offset + groups[g][2]);
+				eccBlocks[b] = ErrorCorrectionEncoding.encode(dataBlocks[b], groups[g][1] - groups[g][2]);
+				offset += groups[g][2];
+			}
+		}
+
+		int[] codewords = new int[version.getCodeWordsLength()];
+		int k = 0;
+		for (int i = 0; i < dataBlocks[blocks - 1].length; i++) {
+			for (int[] block : dataBlocks) {
+				if (i < block.length) codewords[k++] = block[i];
+			}
+		}
+		for (int i = 0; i < eccBlocks[blocks - 1].length; i++) {
+			for (int[] block : eccBlocks) {
+				if (i < block.length) codewords[k++] = block[i];
+			}
+		}
+		return codewords;
+	}
+
+	private static int append(boolean[] bits, int position, int value, int bitCount) {
+		for (int i = bitCount - 1; i >= 0; i--) {
+			bits[position++] = (value >> i & 1) != 0;
+		}
+		return position;
+	}
+
+	private static int mode(String input) {
+		boolean numeric = true;
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (ALPHANUMERIC_CHARSET.indexOf(c) < 0) return BYTE;
+			if (c < '0' || c > '9') numeric = false;
+		}
+		return numeric ? NUMERIC : ALPHANUMERIC;
+	}
+
+	private static int segmentBits(int mode, int length) {
+		switch (mode) {
+			case NUMERIC: return length / 3 * 10 + (length % 3 == 0 ? 0 : length % 3 * 3 + 1);
+			case ALPHANUMERIC: return length / 2 * 11 + length % 2 * 6;
+			default: return length * 8;
+		}
+	}
+
+	private static int levelBit(Extensions.QRCodeInfos.CorrectionLevel level) {
+		switch (level) {
+			case MEDIUM: return 0;
+			case HIGH: return 1;
+			default: throw new UnsupportedOperationException("rMQR codes only support the MEDIUM and HIGH correction levels.");
+		}
+	}
+
+	/*
+	 * =======================================================================
+	 *
+	 * ************************* MATRIX CONSTRUCTION *************************
+	 *
+	 * =======================================================================
+	 */
+
+	/**
+	 * Create the matrix of an rMQR code with its function patterns and its format information
+	 *
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @return the int[width][height] matrix where only the data modules remain empty
+	 */
+	public static int[][] constructMatrix(Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int width = version.width;
+		int height = version.height;
+		int[][] matrix = new int[width][height];
+
+		// timing patterns on the edges and on the columns of the alignment patterns, dark on even coordinates
+		for (int x = 0; x < width; x++) {
+			matrix[x][0] = matrix[x][height - 1] = timingColor(x);
+		}
+		for (int y = 0; y < height; y++) {
+			matrix[0][y] = matrix[width - 1][y] = timingColor(y);
+			for (int x : version.getAlignmentColumns()) matrix[x][y] = timingColor(y);
+		}
+
+		// finder pattern and its separator
+		addSquares(matrix, 0, 0, 7);
+		for (int i = 0; i < 8; i++) {
+			if (i < height) matrix[7][i] = MatrixConstruction.W;
+			if (height > 7) matrix[i][7] = MatrixConstruction.W;
+		}
+
+		// corner finder pattern in the bottom left corner, the separator takes its second line in R9 versions
+		if (height > 7) {
+			matrix[1][height - 1] = MatrixConstruction.B;
+		}
+		if (height > 9) {
+			matrix[0][height - 2] = MatrixConstruction.B;
+			matrix[1][height - 2] = MatrixConstruction.W;
+		}
+
+		// finder sub pattern and corner finder pattern in the top right corner
+		addSquares(matrix, width - 5, height - 5, 5);
+		matrix[width - 2][0] = MatrixConstruction.B;
+		matrix[width - 1][1] = MatrixConstruction.B;
+		matrix[width - 2][1] = MatrixConstruction.W;
+
+		for (int x : version.getAlignmentColumns()) {
+			addSquares(matrix, x - 1, 0, 3);
+			addSquares(matrix, x - 1, height - 3, 3);
+		}
+
+		addFormatInformation(matrix, version, level);
+		return matrix;
+	}
+
+	/**
+	 * Add both copies of the format information. Next to the finder pattern, the bit i goes on (8 + i / 5, 1 + i % 5).
+	 * Next to the finder sub pattern, the bits 0 to 14 go on the 3x5 modules left of the pattern the same way and
+	 * the bits 15 to 17 go above it.
+	 *
+	 * @param matrix the matrix of the rMQR code
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 */
+	public static void addFormatInformation(int[][] matrix, Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int format = getFormatInformation(version, level);
+		int finderSide = format ^ FINDER_FORMAT_MASK;
+		int subFinderSide = format ^ SUB_FINDER_FORMAT_MASK;
+		int width = version.width;
+		int height = version.height;
+
+		for (int i = 0; i < 18; i++) {
+			matrix[8 + i / 5][1 + i % 5] = color(finderSide, i);
+			if (i < 15)
+				matrix[width - 8 + i / 5][height - 6 + i % 5] = color(subFinderSide, i);
+			else
+				matrix[width - 20 + i][height - 6] = color(subFinderSide, i);
+		}
+	}
+
+	/**
+	 * Compute the 18 bits of the format information without any mask: the correction level, the version indicator
+	 * and their BCH code.
+	 *
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @return the format information, most significant bit being the bit 17
+	 */
+	public static int getFormatInformation(Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		int code = levelBit(level) << 5 | version.ordinal();
+		int current = code;
+		for (int i = 0; i < 12; i++) {
+			current = (current << 1) ^ ((current >>> 11) * 0b1111100100101);
+		}
+		return code << 12 | current;
+	}
+
+	/**
+	 * Create the matrix of an rMQR code with the given data
+	 *
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @param data the data bits, see encode(String, Version, CorrectionLevel)
+	 * @return the int[width][height] matrix of the rMQR code
+	 */
+	public static int[][] renderMatrix(Version version, Extensions.QRCodeInfos.CorrectionLevel level, boolean[] data) {
+		int[][] matrix = constructMatrix(version, level);
+		BitMatrix region = BitMatrix.emptyModules(matrix);
+
+		// the columns are placed by pairs from the one left of the right timing pattern, which has no data module
+		int[] order = MatrixConstruction.placementOrder(region, version.width - 2, -1);
+		BitMatrix bits = new BitMatrix(version.width, version.height);
+		long[] words = bits.getWords();
+		for (int i = 0; i < Math.min(order.length, data.length); i++) {
+			if (data[i]) words[order[i] >>> 6] |= 1L << order[i];
+		}
+		bits.xor(VersionTemplate.createMaskPlane(region, MASK));
+		bits.writeTo(matrix, region);
+
+		return matrix;
+	}
+
+	/**
+	 * Encode a string and create its rMQR code
+	 *
+	 * @param input the string to encode, truncated to the capacity of the version
+	 * @param version the version of the rMQR code
+	 * @param level the error correction level, MEDIUM or HIGH
+	 * @return the int[width][height] matrix of the rMQR code
+	 */
+	public static int[][] renderMatrix(String input, Version version, Extensions.QRCodeInfos.CorrectionLevel level) {
+		return renderMatrix(version, level, encode(input, version, level));
+	}
+
+	private static int timingColor(int coordinate) {
+		return coordinate % 2 == 0 ? MatrixConstruction.B : MatrixConstruction.W;
+	}
+
+	private static int color(int bits, int bit) {
+		return (bits >> bit & 1) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+	}
+
+	/*
+	 * Concentric squares alternating dark and light modules from the outside, like the finder patterns
+	 */
+	private static void addSquares(int[][] matrix, int x, int y, int size) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				int ring = Math.min(Math.min(i, j), Math.min(size - 1 - i, size - 1 - j));
+				matrix[x + i][y + j] = ring % 2 == 0 ? MatrixConstruction.B : MatrixConstruction.W;
+			}
+		}
+	}
+}
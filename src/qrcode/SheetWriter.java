@@ -0,0 +1,239 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Writer of sheets of symbols laid out on a grid, as a single raw raster file (binary PBM or PGM).
+ *
+ * The file is created at its final size and every row of cells of the grid is memory-mapped as a band of the
+ * raster, in which the symbols of the row are drawn directly, module row by module row. The bands are drawn in
+ * parallel by the workers, a band belonging to a single worker so that no byte is shared between threads (which
+ * matters for PBM, where a byte holds 8 pixels). No image of the whole sheet is ever built on the heap, so that a
+ * sheet can hold as many symbols as its file allows. Each band is mapped once and forced when it is drawn, its
+ * mapping being released by the garbage collector (Java has no explicit unmapping), so a sheet keeps at most one
+ * mapping per row of cells and per margin, which only takes address space.
+ *
+ * The symbols are centered in their cell of pitchX by pitchY pixels, the remaining space of the cell being their
+ * quiet zone, and the grid is surrounded by a margin.
+ */
+public final class SheetWriter {
+
+	/**
+	 * Raster formats of the sheets
+	 */
+	public enum Format {
+		/**
+		 * Binary portable bitmap (P4), a bit per pixel with 1 being black
+		 */
+		PBM,
+		/**
+		 * Binary portable graymap (P5), a byte per pixel with 0 being black
+		 */
+		PGM
+	}
+
+	private final Format format;
+	private final int columns;
+	private final int rows;
+	private final int pitchX;
+	private final int pitchY;
+	private final int margin;
+	private final int moduleSize;
+
+	/**
+	 * @param format the raster format of the sheet
+	 * @param columns the amount of cells in a row of the grid
+	 * @param rows the amount of rows of the grid
+	 * @param pitchX the width of a cell in pixels
+	 * @param pitchY the height of a cell in pixels
+	 * @param margin the size of the margin around the grid in pixels
+	 * @param moduleSize the size of a module in pixels
+	 */
+	public SheetWriter(Format format, int columns, int rows, int pitchX, int pitchY, int margin, int moduleSize) {
+		if (columns < 1 || rows < 1)
+			throw new IllegalArgumentException("The grid must have at least one cell.");
+		if (pitchX < 1 || pitchY < 1 || moduleSize < 1)
+			throw new IllegalArgumentException("The pitch and the module size must be positive.");
+		if (margin < 0)
+			throw new IllegalArgumentException("The margin must not be negative.");
+
+		this.format = format;
+		this.columns = columns;
+		this.rows = rows;
+		this.pitchX = pitchX;
+		this.pitchY = pitchY;
+		this.margin = margin;
+		this.moduleSize = moduleSize;
+
+		if (getStride() * (long) pitchY > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("A row of cells must not exceed 2 GB.");
+	}
+
+	// Getters
+	public Format getFormat() { return format; }
+	public int getWidth() { return 2 * margin + columns * pitchX; }
+	public int getHeight() { return 2 * margin + rows * pitchY; }
+
+	/**
+	 * @return the size of a row of pixels in the file in bytes
+	 */
+	public int getStride() {
+		return format == Format.PBM ? (getWidth() + 7) >>> 3 : getWidth();
+	}
+
+	/**
+	 * Write a sheet, the symbol i being in the cell (i % columns, i / columns)
+	 *
+	 * @param path the path of the file, which is overwritten
+	 * @param count the amount of symbols, at most the amount of cells
+	 * @param symbols the symbol of each index, called from the workers
+	 * @param threads the amount of workers
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a symbol does not fit in its cell
+	 */
+	public void write(Path path, int count, IntFunction<? extends ModuleSource> symbols, int threads)
+			throws IOException {
+		if (count < 0 || count > (long) columns * rows)
+			throw new IllegalArgumentException("The sheet only has " + (long) columns * rows + " cells.");
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one worker is needed.");
+
+		byte[] header = ((format == Format.PBM ? "P4" : "P5") + "\n" + getWidth() + " " + getHeight()
+				+ (format == Format.PBM ? "\n" : "\n255\n")).getBytes(StandardCharsets.US_ASCII);
+		long dataSize = (long) getStride() * getHeight();
+
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(0);
+			file.setLength(header.length + dataSize);
+			file.write(header);
+			FileChannel channel = file.getChannel();
+
+			// the margins above and below the grid (bands are only the rows of cells)
+			fillLight(channel, header.length, margin);
+			fillLight(channel, header.length + (long) (margin + rows * pitchY) * getStride(), margin);
+
+			ExecutorService workers = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> bands = new ArrayList<>();
+				for (int row = 0; row < rows; row++) {
+					int band = row;
+					bands.add(workers.submit(() -> {
+						writeBand(channel, header.length, band, count, symbols);
+						return null;
+					}));
+				}
+				for (Future<?> band : bands) band.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("The sheet was interrupted.", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) throw (IOException) cause;
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				throw new IOException(cause);
+			} finally {
+				workers.shutdownNow();
+			}
+		}
+	}
+
+	/*
+	 * Map the band of a row of cells and draw its symbols
+	 */
+	private void writeBand(FileChannel channel, int headerSize, int band, int count,
+			IntFunction<? extends ModuleSource> symbols) throws IOException {
+		int stride = getStride();
+		long start = headerSize + (long) (margin + band * pitchY) * stride;
+		MappedByteBuffer pixels = channel.map(FileChannel.MapMode.READ_WRITE, start, (long) pitchY * stride);
+
+		if (format == Format.PGM) {
+			byte[] light = new byte[stride];
+			Arrays.fill(light, (byte) 0xFF);
+			for (int y = 0; y < pitchY; y++) pixels.put(light);
+		}
+
+		for (int column = 0; column < columns; column++) {
+			long index = (long) band * columns + column;
+			if (index >= count) break;
+			drawSymbol(pixels, symbols.apply((int) index), margin + column * pitchX);
+		}
+		pixels.force();
+	}
+
+	/*
+	 * Draw a symbol centered in its cell, each row of modules being built once and copied on its rows of pixels
+	 */
+	private void drawSymbol(MappedByteBuffer pixels, ModuleSource symbol, int cellX) {
+		int width = symbol.getWidth() * moduleSize;
+		int height = symbol.getHeight() * moduleSize;
+		if (width > pitchX || height > pitchY)
+			throw new IllegalArgumentException("A symbol of " + symbol.getWidth() + "x" + symbol.getHeight()
+					+ " modules does not fit in a cell.");
+
+		int x0 = cellX + (pitchX - width) / 2;
+		int y0 = (pitchY - height) / 2;
+		int stride = getStride();
+		boolean packed = format == Format.PBM;
+
+		// a segment covers the bytes of a row of pixels of the symbol
+		int first = packed ? x0 >>> 3 : x0;
+		int last = packed ? (x0 + width - 1) >>> 3 : x0 + width - 1;
+		byte[] segment = new byte[last - first + 1];
+		long[] row = new long[(symbol.getWidth() + 63) >>> 6];
+
+		for (int my = 0; my < symbol.getHeight(); my++) {
+			symbol.getRow(my, row);
+			Arrays.fill(segment, packed ? 0 : (byte) 0xFF);
+			for (int mx = 0; mx < symbol.getWidth(); mx++) {
+				if ((row[mx >>> 6] & 1L << mx) == 0) continue;
+
+				int pixel = x0 + mx * moduleSize;
+				if (packed) {
+					for (int p = pixel; p < pixel + moduleSize; p++) segment[(p >>> 3) - first] |= 0x80 >>> (p & 7);
+				} else {
+					Arrays.fill(segment, pixel - first, pixel - first + moduleSize, (byte) 0);
+				}
+			}
+
+			for (int y = y0 + my * moduleSize; y < y0 + (my + 1) * moduleSize; y++) {
+				int offset = y * stride + first;
+				if (packed) {
+					// the bytes at the edges of the segment may hold pixels of the neighbouring cells
+					for (int i = 0; i < segment.length; i++) {
+						pixels.put(offset + i, (byte) (pixels.get(offset + i) | segment[i]));
+					}
+				} else {
+					pixels.position(offset);
+					pixels.put(segment);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Fill rows of pixels outside of the bands with light pixels (the file is created with zeros, which are light
+	 * pixels of PBM but dark ones of PGM)
+	 */
+	private void fillLight(FileChannel channel, long start, int rowCount) throws IOException {
+		if (format == Format.PBM || rowCount == 0) return;
+
+		MappedByteBuffer pixels = channel.map(FileChannel.MapMode.READ_WRITE, start, (long) rowCount * getStride());
+		byte[] light = new byte[getStride()];
+		Arrays.fill(light, (byte) 0xFF);
+		for (int y = 0; y < rowCount; y++) pixels.put(light);
+		pixels.force();
+	}
+}
@@ -0,0 +1,206 @@
+package qrcode;
+
+/**
+ * Compiled form of a pattern, which can be stamped on a matrix at any anchor without allocating anything.
+ *
+ * The modules of the pattern are packed once as row bitmasks and the translation of every anchor is computed once
+ * at creation, so that stamping only reads precomputed values. Every MatrixConstruction.Pattern has its stamp,
+ * and callers can compile their own patterns, for example to reserve the area of a logo:
+ *
+ * 		Stamp logo = new Stamp(new int[9][9], false, false);
+ * 		logo.stamp(MatrixConstruction.Anchor.CENTER, matrix, matrix.length / 2, matrix.length / 2);
+ *
+ * The pattern matrices follow the format of MatrixConstruction.Pattern: 1 for a dark module, 0 for a light one,
+ * and stamping gives exactly the same matrix as MatrixConstruction#addPattern, borders included.
+ *
+ * @see MatrixConstruction.Pattern
+ */
+public final class Stamp {
+
+	private final int height;
+	private final int width;
+	private final BitMatrix rows;
+	private final boolean recurring;
+	private final boolean borders;
+	private final int[] anchorRows;
+	private final int[] anchorColumns;
+
+	/**
+	 * Compile a pattern
+	 *
+	 * @param patternMatrix the pattern, for recurring patterns it must only be the recurring part
+	 * @param recurring whether the pattern is a recurring sequence or not
+	 * @param borders whether the pattern requires white borders to be added
+	 */
+	public Stamp(int[][] patternMatrix, boolean recurring, boolean borders) {
+		if (patternMatrix.length == 0 || patternMatrix[0].length == 0)
+			throw new IllegalArgumentException("The pattern must not be empty.");
+
+		this.height = patternMatrix.length;
+		this.width = patternMatrix[0].length;
+		this.recurring = recurring;
+		this.borders = borders;
+
+		this.rows = new BitMatrix(height, width);
+		for (int j = 0; j < height; j++) {
+			if (patternMatrix[j].length != width)
+				throw new IllegalArgumentException("The pattern must be rectangular.");
+			for (int i = 0; i < width; i++) {
+				if (patternMatrix[j][i] != 0) rows.set(j, i);
+			}
+		}
+
+		MatrixConstruction.Anchor[] anchors = MatrixConstruction.Anchor.values();
+		this.anchorRows = new int[anchors.length];
+		this.anchorColumns = new int[anchors.length];
+		for (MatrixConstruction.Anchor anchor : anchors) {
+			int[] translation = anchor.translateValues(new int[] {height, width});
+			anchorRows[anchor.ordinal()] = translation[0];
+			anchorColumns[anchor.ordinal()] = translation[1];
+		}
+	}
+
+	// Getters
+	public int getHeight() { return height; }
+	public int getWidth() { return width; }
+	public boolean isRecurring() { return recurring; }
+	public boolean hasBorders() { return borders; }
+
+	/**
+	 * Stamp a non-recurring pattern around an anchor
+	 *
+	 * @see Stamp#stamp(MatrixConstruction.Anchor, int[][], int, int, int, int)
+	 */
+	public void stamp(MatrixConstruction.Anchor a, int[][] matrix, int x, int y) {
+		if (recurring)
+			throw new IllegalArgumentException("Recurring patterns must have maximum coordinates");
+
+		stamp(a, matrix, x, y, -1, -1);
+	}
+
+	/**
+	 * Stamp the pattern from specific coordinates around a given anchor in a matrix
+	 *
+	 * @param a The anchor from which the pattern should be added (ignored by recurring patterns)
+	 * @param matrix The matrix reference where the pattern should be added
+	 * @param x The starting x coordinate from the anchor
+	 * @param y The starting y coordinate from the anchor
+	 * @param maxX The maximum x coordinate from the anchor (only used when the pattern is recurring)
+	 * @param maxY The maximum y coordinate from the anchor (only used when the pattern is recurring)
+	 */
+	public void stamp(MatrixConstruction.Anchor a, int[][] matrix, int x, int y, int maxX, int maxY) {
+		int top = y - anchorRows[a.ordinal()];
+		int left = x - anchorColumns[a.ordinal()];
+		long[] words = rows.getWords();
+		int wordsPerLine = rows.getWordsPerLine();
+
+		if (recurring) {
+			for (int j = 0, row = 0; j < maxY - y + 1; j++, row = row + 1 == height ? 0 : row + 1) {
+				int[] line = matrix[j + y];
+				int offset = row * wordsPerLine;
+				for (int i = 0, column = 0; i < maxX - x + 1; i++, column = column + 1 == width ? 0 : column + 1) {
+					line[i + x] = (words[offset + (column >>> 6)] & 1L << column) != 0 ? MatrixConstruction.B
+							: MatrixConstruction.W;
+				}
+			}
+		} else {
+			for (int j = 0; j < height; j++) {
+				int[] line = matrix[j + top];
+				int offset = j * wordsPerLine;
+				for (int i = 0; i < width; i++) {
+					line[i + left] = (words[offset + (i >>> 6)] & 1L << i) != 0 ? MatrixConstruction.B
+							: MatrixConstruction.W;
+				}
+			}
+		}
+
+		if (borders) {
+			for (int i = -1; i <= width; i++) {
+				stampBorder(matrix, -1, i, top, left);
+				stampBorder(matrix, height, i, top, left);
+			}
+			for (int j = 0; j < height; j++) {
+				stampBorder(matrix, j, -1, top, left);
+				stampBorder(matrix, j, width, top, left);
+			}
+		}
+	}
+
+	/**
+	 * Stamp a non-recurring pattern around an anchor in a packed matrix, one operation per 64 modules of a row
+	 *
+	 * @param a The anchor from which the pattern should be added
+	 * @param dark The packed matrix where the dark modules of the pattern are written
+	 * @param covered A packed matrix where every module of the pattern (and of its borders) is set, can be null
+	 * @param x The starting x coordinate from the anchor
+	 * @param y The starting y coordinate from the anchor
+	 */
+	public void stamp(MatrixConstruction.Anchor a, BitMatrix dark, BitMatrix covered, int x, int y) {
+		if (recurring)
+			throw new IllegalArgumentException("Recurring patterns can only be stamped on int[][] matrices");
+
+		int top = y - anchorRows[a.ordinal()];
+		int left = x - anchorColumns[a.ordinal()];
+		if (top < 0 || left < 0 || top + height > dark.getWidth() || left + width > dark.getHeight())
+			throw new IllegalArgumentException("The pattern must fit in the matrix.");
+
+		long[] words = rows.getWords();
+		int wordsPerLine = rows.getWordsPerLine();
+		for (int j = 0; j < height; j++) {
+			for (int w = 0; w < wordsPerLine; w++) {
+				int modules = Math.min(64, width - (w << 6));
+				long mask = modules == 64 ? -1L : (1L << modules) - 1;
+				blit(dark, j + top, left + (w << 6), words[j * wordsPerLine + w], mask);
+				if (covered != null) blit(covered, j + top, left + (w << 6), mask, mask);
+			}
+		}
+
+		if (borders) {
+			for (int j = -1; j <= height; j++) {
+				for (int i = -1; i <= width; i++) {
+					int line = j + top;
+					int module = i + left;
+					if ((j == -1 || j == height || i == -1 || i == width) && isBorder(j, i, top, left, dark.getWidth())
+							&& line >= 0 && module >= 0 && line < dark.getWidth() && module < dark.getHeight()) {
+						dark.clear(line, module);
+						if (covered != null) covered.set(line, module);
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Writes the bits of a mask of a row of the pattern starting at the given module of a line
+	 */
+	private static void blit(BitMatrix target, int line, int module, long bits, long mask) {
+		long[] words = target.getWords();
+		int index = line * target.getWordsPerLine() + (module >>> 6);
+		int shift = module & 63;
+
+		words[index] = words[index] & ~(mask << shift) | bits << shift;
+		if (shift != 0 && mask >>> (64 - shift) != 0)
+			words[index + 1] = words[index + 1] & ~(mask >>> (64 - shift)) | bits >>> (64 - shift);
+	}
+
+	/*
+	 * Border module (j, i) of the pattern, j and i being relative to the pattern (-1 or its size for the borders)
+	 */
+	private void stampBorder(int[][] matrix, int j, int i, int top, int left) {
+		if (isBorder(j, i, top, left, matrix.length)) matrix[j + top][i + left] = MatrixConstruction.W;
+	}
+
+	/*
+	 * Same conditions as the original loops of MatrixConstruction#addPattern: the bottom and right borders are only
+	 * drawn close to the top left corner (which is where the finder patterns have them)
+	 */
+	private boolean isBorder(int j, int i, int top, int left, int length) {
+		int xCord = i + left;
+		int yCord = j + top;
+
+		return (j == -1 && yCord >= 0 && i > -1) ||
+				(i == -1 && xCord >= 0 && j > -1) ||
+				(j == height && yCord <= height && xCord > -1 && xCord < length) ||
+				(i == width && xCord <= width && yCord > -1 && yCord < length);
+	}
+}
@@ -0,0 +1,212 @@
+package qrcode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Off-heap memory where the QR codes of a batch are rendered as packed bits and freed all at once.
+ *
+ * An arena is a direct buffer allocated once, in which QR codes are rendered one after the other with the
+ * placement kernels (see PlacementKernel), each one taking the words of a packed matrix of its version. The
+ * returned symbols are views reading the buffer directly: they can be streamed as any ModuleSource or written
+ * as raw packed words with getBytes(). When the batch is done, reset() frees every QR code of the arena at once
+ * (and invalidates their views), so that the heap only holds the views while the batch is running, no matter
+ * how many modules are rendered.
+ *
+ * The mask can either be given or selected by the arena with MaskSelector#STRATEGY, on candidates and a selection
+ * kept per version by the arena, so that selecting the mask of a version already rendered by the arena allocates
+ * no matrix.
+ *
+ * An arena is not thread-safe: every worker should have its own, for example with perThread().
+ *
+ * @see PlacementKernel
+ */
+public final class SymbolArena {
+
+	/**
+	 * Capacity of the arenas returned by perThread(), which holds more than 400 QR codes of version 40
+	 */
+	public static final int DEFAULT_CAPACITY = 2 << 20;
+
+	private static final ThreadLocal<SymbolArena> PER_THREAD =
+			ThreadLocal.withInitial(() -> new SymbolArena(DEFAULT_CAPACITY));
+
+	private final ByteBuffer memory;
+	private final LongBuffer words;
+	// per version, the unmasked QR code and its mask candidates, created the first time the version is selected
+	private final BitMatrix[] bases = new BitMatrix[41];
+	private final MaskSelector.Candidates[] candidates = new MaskSelector.Candidates[41];
+	private int used;
+	private int generation;
+
+	/**
+	 * Allocate an arena
+	 *
+	 * @param capacity the size of the arena in bytes
+	 */
+	public SymbolArena(int capacity) {
+		if (capacity < 8)
+			throw new IllegalArgumentException("The arena must hold at least one word.");
+
+		this.memory = ByteBuffer.allocateDirect(capacity & ~7).order(ByteOrder.nativeOrder());
+		this.words = memory.asLongBuffer();
+	}
+
+	/**
+	 * @return the arena of the current thread, of DEFAULT_CAPACITY bytes
+	 */
+	public static SymbolArena perThread() {
+		return PER_THREAD.get();
+	}
+
+	// Getters
+	public int getCapacity() { return memory.capacity(); }
+	public int getUsedBytes() { return used * 8; }
+
+	/**
+	 * Render a QR code in the arena, with the mask selected by MaskSelector#STRATEGY
+	 *
+	 * @param version the version of the QR code
+	 * @param data the data to be written on the QR code
+	 * @return the view of the QR code, valid until the next reset of the arena
+	 * @throws IllegalStateException if the arena is full
+	 * @see MaskSelector#select(int, boolean[])
+	 */
+	public Symbol render(int version, boolean[] data) {
+		VersionTemplate template = MaskSelector.getTemplate(version);
+		int count = ((template.getSize() + 63) >>> 6) * template.getSize();
+		if (count > words.capacity() - used)
+			throw new IllegalStateException("The arena is full, it must be reset before rendering more QR codes.");
+
+		if (candidates[version] == null) {
+			bases[version] = new BitMatrix(template.getSize());
+			candidates[version] = new MaskSelector.Candidates(template, new MaskSelector.Selection(
+					version, -1, -1, null, new BitMatrix(template.getSize())));
+		}
+
+		// the unmasked QR code
+		BitMatrix base = bases[version];
+		base.clear();
+		MatrixConstruction.placeData(base, template.getPlacementOrder(), data);
+		base.or(template.getFunctionPatterns());
+
+		MaskSelector.Selection selection = MaskSelector.select(candidates[version].reset(
+				MaskSelector.getCorrectionLevel(), base, System.nanoTime() + MaskSelector.TIME_BUDGET),
+				MaskSelector.STRATEGY);
+
+		LongBuffer target = words.duplicate();
+		target.position(used);
+		target.put(selection.getSymbol().getWords());
+		Symbol symbol = new Symbol(template.getSize(), used, count);
+		used += count;
+		return symbol;
+	}
+
+	/**
+	 * Render a QR code in the arena
+	 *
+	 * @param version the version of the QR code
+	 * @param data the data to be written on the QR code
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the view of the QR code, valid until the next reset of the arena
+	 * @throws IllegalStateException if the arena is full
+	 */
+	public Symbol render(int version, boolean[] data, int mask) {
+		PlacementKernel kernel = PlacementKernel.of(MaskSelector.getTemplate(version).getVersion(),
+				MaskSelector.getCorrectionLevel(), mask);
+
+		int count = kernel.getWordCount();
+		if (count > words.capacity() - used)
+			throw new IllegalStateException("The arena is full, it must be reset before rendering more QR codes.");
+
+		kernel.renderInto(data, words, used);
+		Symbol symbol = new Symbol(kernel.getSize(), used, count);
+		used += count;
+		return symbol;
+	}
+
+	/**
+	 * Free every QR code of the arena. Their views can no longer be used.
+	 */
+	public void reset() {
+		used = 0;
+		generation++;
+	}
+
+	/**
+	 * QR code rendered in an arena, laid out like the words of a BitMatrix
+	 */
+	public final class Symbol implements ModuleSource {
+
+		private final int size;
+		private final int offset;
+		private final int count;
+		private final int wordsPerLine;
+		private final int symbolGeneration;
+
+		private Symbol(int size, int offset, int count) {
+			this.size = size;
+			this.offset = offset;
+			this.count = count;
+			this.wordsPerLine = (size + 63) >>> 6;
+			this.symbolGeneration = generation;
+		}
+
+		@Override
+		public int getWidth() { return size; }
+
+		@Override
+		public int getHeight() { return size; }
+
+		@Override
+		public boolean isDark(int x, int y) {
+			checkGeneration();
+			return (words.get(offset + x * wordsPerLine + (y >>> 6)) & 1L << y) != 0;
+		}
+
+		@Override
+		public long[] getRow(int y, long[] row) {
+			checkGeneration();
+			int rowWords = (size + 63) >>> 6;
+			if (row == null) row = new long[rowWords];
+
+			int index = offset + (y >>> 6);
+			for (int w = 0, x = 0; w < rowWords; w++) {
+				long bits = 0;
+				for (int end = Math.min(size, x + 64); x < end; x++, index += wordsPerLine) {
+					bits |= (words.get(index) >>> y & 1L) << x;
+				}
+				row[w] = bits;
+			}
+			return row;
+		}
+
+		/**
+		 * @return a read-only view of the packed words of the QR code in the arena, in the native byte order
+		 */
+		public ByteBuffer getBytes() {
+			checkGeneration();
+			ByteBuffer bytes = memory.duplicate();
+			bytes.limit((offset + count) * 8).position(offset * 8);
+			return bytes.slice().asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		}
+
+		/**
+		 * Copy the QR code on the heap
+		 *
+		 * @return the packed matrix of the QR code
+		 */
+		public BitMatrix toBitMatrix() {
+			checkGeneration();
+			BitMatrix matrix = new BitMatrix(size);
+			words.duplicate().position(offset).get(matrix.getWords(), 0, count);
+			return matrix;
+		}
+
+		private void checkGeneration() {
+			if (symbolGeneration != generation)
+				throw new IllegalStateException("The arena of the QR code has been reset.");
+		}
+	}
+}
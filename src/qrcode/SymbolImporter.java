@@ -0,0 +1,245 @@
+package qrcode;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Import of rendered symbols from images, a row of pixels at a time.
+ *
+ * Rows are read from the raster of the image with Raster#getSamples (one call per band and per row instead of a
+ * getRGB call per pixel) and thresholded to packed rows, dark pixels being the ones whose luminance is below the
+ * middle gray (transparent pixels are light). Images can either be imported pixel per pixel (threshold) or as a
+ * clean rendering of a symbol (read), whose module size and quiet zone are detected so that only the middle row
+ * of every row of modules has to be read.
+ *
+ * Like Helpers, this class relies on AWT and ImageIO and is not part of the headless core.
+ */
+public final class SymbolImporter {
+
+	private SymbolImporter() {}
+
+	/**
+	 * Symbol read from an image, with the geometry of its rendering
+	 */
+	public static final class Result {
+
+		private final BitMatrix modules;
+		private final int moduleSize;
+		private final int quietZone;
+
+		private Result(BitMatrix modules, int moduleSize, int quietZone) {
+			this.modules = modules;
+			this.moduleSize = moduleSize;
+			this.quietZone = quietZone;
+		}
+
+		// Getters
+		public BitMatrix getModules() { return modules; }
+		public int getModuleSize() { return moduleSize; }
+		public int getQuietZone() { return quietZone; }
+	}
+
+	/**
+	 * Threshold every pixel of an image
+	 *
+	 * @param image the image
+	 * @return the packed matrix of the pixels, a pixel (x, y) being the module (x, y)
+	 */
+	public static BitMatrix threshold(BufferedImage image) {
+		int width = image.getWidth();
+		BitMatrix pixels = new BitMatrix(width, image.getHeight());
+		RowReader reader = new RowReader(image);
+		long[] row = new long[(width + 63) >>> 6];
+
+		for (int y = 0; y < image.getHeight(); y++) {
+			reader.read(y, row);
+			for (int x = VectorWriter.nextBit(row, 0, width, false); x < width;
+					x = VectorWriter.nextBit(row, x + 1, width, false)) {
+				pixels.set(x, y);
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Read a clean rendering of a symbol from a file
+	 *
+	 * @see SymbolImporter#read(BufferedImage)
+	 */
+	public static Result read(File file) throws IOException {
+		BufferedImage image = ImageIO.read(file);
+		if (image == null)
+			throw new IOException("The file " + file + " is not a supported image.");
+		return read(image);
+	}
+
+	/**
+	 * Read a clean rendering of a symbol, made of square modules of a whole amount of pixels surrounded by the same
+	 * quiet zone on every side, with a dark top left module (as for QR codes, Micro QR codes and rMQR codes).
+	 *
+	 * The quiet zone is given by the first dark pixels from the top and from the left, and must match the last dark
+	 * pixels from the right and from the bottom, so the symbol needs a dark module on each of its edges (as the
+	 * finder and timing patterns of these symbols have, but not every Micro QR code). The module size is the
+	 * greatest common divisor of the runs of pixels of the symbol. The modules are then sampled at their center.
+	 *
+	 * @param image the rendering of the symbol
+	 * @return the modules of the symbol, its module size and its quiet zone
+	 * @throws IllegalArgumentException if the image is not a clean rendering of a symbol with the same quiet zone
+	 *             on every side
+	 */
+	public static Result read(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		RowReader reader = new RowReader(image);
+		long[] row = new long[(width + 63) >>> 6];
+
+		// first pass: quiet zone and runs of every row
+		int top = -1;
+		int bottom = -1;
+		int left = width;
+		int right = -1;
+		int moduleSize = 0;
+		for (int y = 0; y < height; y++) {
+			reader.read(y, row);
+			int x = VectorWriter.nextBit(row, 0, width, false);
+			if (x == width) continue;
+
+			if (top < 0) top = y;
+			bottom = y;
+			left = Math.min(left, x);
+			while (x < width) {
+				int end = VectorWriter.nextBit(row, x, width, true);
+				right = Math.max(right, end - 1);
+				moduleSize = gcd(moduleSize, end - x);
+				x = VectorWriter.nextBit(row, end, width, false);
+				if (x < width) moduleSize = gcd(moduleSize, x - end);
+			}
+		}
+		if (top < 0)
+			throw new IllegalArgumentException("The image has no dark pixel.");
+		if (top != left)
+			throw new IllegalArgumentException("The quiet zone is not the same on the top and on the left.");
+		if (right != width - left - 1 || bottom != height - top - 1)
+			throw new IllegalArgumentException("The quiet zone is not the same on the right and on the bottom.");
+
+		int symbolWidth = width - 2 * left;
+		int symbolHeight = height - 2 * top;
+		moduleSize = gcd(moduleSize, gcd(symbolWidth, symbolHeight));
+		if (symbolWidth <= 0 || symbolHeight <= 0 || left % moduleSize != 0)
+			throw new IllegalArgumentException("The image is not a clean rendering of a symbol.");
+
+		// second pass: the middle row of every row of modules
+		BitMatrix modules = new BitMatrix(symbolWidth / moduleSize, symbolHeight / moduleSize);
+		for (int my = 0; my < modules.getHeight(); my++) {
+			reader.read(top + my * moduleSize + moduleSize / 2, row);
+			for (int mx = 0; mx < modules.getWidth(); mx++) {
+				int x = left + mx * moduleSize + moduleSize / 2;
+				if ((row[x >>> 6] & 1L << x) != 0) modules.set(mx, my);
+			}
+		}
+		return new Result(modules, moduleSize, left / moduleSize);
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/*
+	 * Reader of the rows of an image as packed dark pixels, with buffers reused from a row to the next
+	 */
+	private static final class RowReader {
+
+		private final BufferedImage image;
+		private final Raster raster;
+		private final ColorModel colorModel;
+		private final int width;
+		private final boolean[] darkIndices;
+		private final int[][] bands;
+		private final int[] maxima;
+		private final int alphaBand;
+		private final int[] argb;
+
+		RowReader(BufferedImage image) {
+			this.image = image;
+			this.raster = image.getRaster();
+			this.colorModel = image.getColorModel();
+			this.width = image.getWidth();
+			this.alphaBand = colorModel.hasAlpha() ? colorModel.getNumComponents() - 1 : -1;
+
+			if (colorModel instanceof IndexColorModel) {
+				IndexColorModel palette = (IndexColorModel) colorModel;
+				darkIndices = new boolean[palette.getMapSize()];
+				for (int i = 0; i < darkIndices.length; i++) darkIndices[i] = isDark(palette.getRGB(i));
+				bands = new int[][] {new int[width]};
+				maxima = null;
+				argb = null;
+			} else if (isSupported(colorModel, raster)) {
+				darkIndices = null;
+				bands = new int[raster.getNumBands()][width];
+				maxima = new int[raster.getNumBands()];
+				for (int b = 0; b < maxima.length; b++) maxima[b] = (1 << colorModel.getComponentSize(b)) - 1;
+				argb = null;
+			} else {
+				// other color spaces are converted by the color model
+				darkIndices = null;
+				bands = null;
+				maxima = null;
+				argb = new int[width];
+			}
+		}
+
+		void read(int y, long[] row) {
+			for (int w = 0; w < row.length; w++) row[w] = 0;
+
+			if (darkIndices != null) {
+				int[] indices = raster.getSamples(0, y, width, 1, 0, bands[0]);
+				for (int x = 0; x < width; x++) {
+					if (darkIndices[indices[x]]) row[x >>> 6] |= 1L << x;
+				}
+			} else if (bands != null) {
+				for (int b = 0; b < bands.length; b++) raster.getSamples(0, y, width, 1, b, bands[b]);
+				boolean gray = colorModel.getNumColorComponents() == 1;
+				for (int x = 0; x < width; x++) {
+					if (alphaBand >= 0 && bands[alphaBand][x] * 2 <= maxima[alphaBand]) continue;
+
+					long luminance = gray ? 1000L * bands[0][x] * 255 / maxima[0]
+							: (299L * bands[0][x] * 255 / maxima[0] + 587L * bands[1][x] * 255 / maxima[1]
+									+ 114L * bands[2][x] * 255 / maxima[2]);
+					if (luminance < 128_000) row[x >>> 6] |= 1L << x;
+				}
+			} else {
+				image.getRGB(0, y, width, 1, argb, 0, width);
+				for (int x = 0; x < width; x++) {
+					if (isDark(argb[x])) row[x >>> 6] |= 1L << x;
+				}
+			}
+		}
+
+		/*
+		 * Whether the bands of the raster are the components of the color model in a RGB or gray color space
+		 */
+		private static boolean isSupported(ColorModel colorModel, Raster raster) {
+			ColorSpace space = colorModel.getColorSpace();
+			return (space.isCS_sRGB() || space.getType() == ColorSpace.TYPE_GRAY)
+					&& raster.getNumBands() == colorModel.getNumComponents();
+		}
+
+		private static boolean isDark(int argb) {
+			if ((argb >>> 24) < 128) return false;
+			int luminance = 299 * (argb >>> 16 & 0xFF) + 587 * (argb >>> 8 & 0xFF) + 114 * (argb & 0xFF);
+			return luminance < 128_000;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package qrcode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Vector encoder writing symbols as SVG documents or PDF paths, without any DOM nor raster.
+ *
+ * Symbols are walked row by row, and every horizontal run of dark modules becomes a single rectangle of the path,
+ * so that the output only grows with the amount of runs and not with the scale, which is just a factor applied to
+ * the coordinates. A QR code of version 40 has about 8000 runs for 15000 dark modules.
+ *
+ * A writer only holds its settings and can be shared between threads:
+ *
+ * 		new VectorWriter(10, 4).writeSvg(ModuleSource.of(version, data), writer);
+ *
+ * @see ModuleSource
+ */
+public final class VectorWriter {
+
+	private final int moduleSize;
+	private final int quietZone;
+
+	/**
+	 * @param moduleSize the size of a module in user units (pixels for SVG, points for PDF)
+	 * @param quietZone the size of the quiet zone around the symbol in modules (usually 4 for QR codes)
+	 */
+	public VectorWriter(int moduleSize, int quietZone) {
+		if (moduleSize < 1)
+			throw new IllegalArgumentException("The module size must be positive.");
+		if (quietZone < 0)
+			throw new IllegalArgumentException("The quiet zone must not be negative.");
+
+		this.moduleSize = moduleSize;
+		this.quietZone = quietZone;
+	}
+
+	// Getters
+	public int getModuleSize() { return moduleSize; }
+	public int getQuietZone() { return quietZone; }
+
+	/**
+	 * @param symbol the modules of the symbol
+	 * @return the width of the drawing of the symbol with its quiet zone, in user units
+	 */
+	public int getWidth(ModuleSource symbol) {
+		return (symbol.getWidth() + 2 * quietZone) * moduleSize;
+	}
+
+	/**
+	 * @param symbol the modules of the symbol
+	 * @return the height of the drawing of the symbol with its quiet zone, in user units
+	 */
+	public int getHeight(ModuleSource symbol) {
+		return (symbol.getHeight() + 2 * quietZone) * moduleSize;
+	}
+
+	/**
+	 * Write a symbol as an UTF-8 SVG document in a stream, which is flushed but not closed
+	 *
+	 * @see VectorWriter#writeSvg(ModuleSource, Writer)
+	 */
+	public void writeSvg(ModuleSource symbol, OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		writeSvg(symbol, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Write a symbol as a SVG document. The view box is expressed in modules (the quiet zone included) and the
+	 * size of the document in pixels, and the dark runs are the rectangles of a single path.
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param writer the writer to write the document to, which is neither flushed nor closed
+	 * @throws IOException if the writer cannot be written
+	 */
+	public void writeSvg(ModuleSource symbol, Writer writer) throws IOException {
+		int width = symbol.getWidth() + 2 * quietZone;
+		int height = symbol.getHeight() + 2 * quietZone;
+
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" viewBox=\"0 0 " + width + " " + height
+				+ "\" width=\"" + width * moduleSize + "\" height=\"" + height * moduleSize
+				+ "\" shape-rendering=\"crispEdges\">\n");
+		writer.write("<rect width=\"" + width + "\" height=\"" + height + "\" fill=\"#FFFFFF\"/>\n");
+		writer.write("<path fill=\"#000000\" d=\"");
+		forEachRun(symbol, (x, y, length) -> {
+			writer.write('M');
+			writer.write(Integer.toString(x + quietZone));
+			writer.write(' ');
+			writer.write(Integer.toString(y + quietZone));
+			writer.write('h');
+			writer.write(Integer.toString(length));
+			writer.write("v1h-");
+			writer.write(Integer.toString(length));
+			writer.write('z');
+		});
+		writer.write("\"/>\n</svg>\n");
+	}
+
+	/**
+	 * Write the dark runs of a symbol as a filled path of a PDF content stream, one "re" operator per run followed
+	 * by a single "f". Coordinates are in points, the origin being the bottom left corner of the quiet zone. The
+	 * light modules are not painted, and the current fill color is used for the dark ones.
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param output the content stream to append the operators to
+	 * @throws IOException if the content stream cannot be written
+	 */
+	public void writePdfPath(ModuleSource symbol, Appendable output) throws IOException {
+		int top = symbol.getHeight() + quietZone - 1;
+		forEachRun(symbol, (x, y, length) -> {
+			output.append(Integer.toString((x + quietZone) * moduleSize)).append(' ')
+					.append(Integer.toString((top - y) * moduleSize)).append(' ')
+					.append(Integer.toString(length * moduleSize)).append(' ')
+					.append(Integer.toString(moduleSize)).append(" re\n");
+		});
+		output.append("f\n");
+	}
+
+	/**
+	 * Consumer of the runs of dark modules
+	 */
+	@FunctionalInterface
+	interface RunConsumer {
+		void accept(int x, int y, int length) throws IOException;
+	}
+
+	/**
+	 * Walk the maximal horizontal runs of dark modules of a symbol, row by row from the top one and from left to
+	 * right in a row. The runs are found a word of modules at a time.
+	 *
+	 * @param symbol the modules of the symbol
+	 * @param consumer the consumer of the runs
+	 * @throws IOException if the consumer throws it
+	 */
+	static void forEachRun(ModuleSource symbol, RunConsumer consumer) throws IOException {
+		int width = symbol.getWidth();
+		long[] row = new long[(width + 63) >>> 6];
+
+		for (int y = 0; y < symbol.getHeight(); y++) {
+			symbol.getRow(y, row);
+			int x = nextBit(row, 0, width, false);
+			while (x < width) {
+				int end = nextBit(row, x, width, true);
+				consumer.accept(x, y, end - x);
+				x = nextBit(row, end, width, false);
+			}
+		}
+	}
+
+	/*
+	 * Index of the first module from the given one which is dark (or light if clear), or the width if there is none
+	 */
+	static int nextBit(long[] row, int from, int width, boolean clear) {
+		if (from >= width) return width;
+
+		int w = from >>> 6;
+		long bits = (clear ? ~row[w] : row[w]) & -1L << from;
+		while (bits == 0) {
+			if (++w == row.length) return width;
+			bits = clear ? ~row[w] : row[w];
+		}
+		return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(bits));
+	}
+}
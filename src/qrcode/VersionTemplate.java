@@ -0,0 +1,167 @@
+package qrcode;
+
+/**
+ * Precomputed, immutable information about the layout of a given QR code version.
+ *
+ * Everything in here only depends on the version of the QR code (and not on the data), the parts which depend on
+ * the mask or the error correction level being precomputed for every possible value. This is why a template is
+ * computed only once per version and then shared between every QR code of that version.
+ *
+ * The template holds:
+ *      - the dark modules of the function patterns (finders, alignments, timings, dark module and version
+ *        information), without the format information which depends on the mask
+ *      - the data region, which is the set of modules which are not part of a function pattern
+ *      - the format information modules for every correction level and mask
+ *      - the order in which the data bits are placed on the data region
+ *      - the 8 mask patterns as packed bitplanes, already restricted to the data region, so that masking
+ *        the data modules of a QR code is a single XOR per 64 modules
+ */
+public final class VersionTemplate {
+
+	private static final int MASK_AMOUNT = 8;
+
+	/*
+	 * Templates are created lazily, one per version (index 0 is unused).
+	 * Since templates are immutable with only final fields, racing threads can at worst compute the same template
+	 * twice, which is harmless.
+	 */
+	private static final VersionTemplate[] TEMPLATES = new VersionTemplate[41];
+
+	private final int version;
+	private final int size;
+	private final BitMatrix functionPatterns;
+	private final BitMatrix dataRegion;
+	private final BitMatrix formatRegion;
+	private final BitMatrix[] maskPlanes;
+	private final int[] placementOrder;
+	private final BitMatrix[][] formatPlanes;
+
+	private VersionTemplate(int version) {
+		this.version = version;
+		this.size = QRCodeInfos.getMatrixSize(version);
+
+		// The function patterns do not depend on the mask nor the correction level, any value can be used here.
+		int[][] matrix = MatrixConstruction.initializeMatrix(version);
+		Extensions.constructMatrix(matrix,
+				new Extensions.QRCodeInfos(version, 0, Extensions.QRCodeInfos.CorrectionLevel.LOW));
+		this.dataRegion = BitMatrix.emptyModules(matrix);
+
+		// With an invalid mask the format information is fully written with light modules, which gives its region
+		int[][] formatMatrix = new int[size][size];
+		MatrixConstruction.addFormatInformation(formatMatrix, -1);
+		this.formatRegion = new BitMatrix(size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (formatMatrix[x][y] != 0) formatRegion.set(x, y);
+			}
+		}
+		this.functionPatterns = BitMatrix.fromMatrix(matrix).andNot(formatRegion);
+
+		this.placementOrder = MatrixConstruction.placementOrder(dataRegion);
+
+		this.maskPlanes = new BitMatrix[MASK_AMOUNT];
+		for (int m = 0; m < MASK_AMOUNT; m++) {
+			maskPlanes[m] = createMaskPlane(dataRegion, m);
+		}
+
+		Extensions.QRCodeInfos.CorrectionLevel[] levels = Extensions.QRCodeInfos.CorrectionLevel.values();
+		this.formatPlanes = new BitMatrix[levels.length][MASK_AMOUNT];
+		for (Extensions.QRCodeInfos.CorrectionLevel level : levels) {
+			for (int m = 0; m < MASK_AMOUNT; m++) {
+				formatMatrix = new int[size][size];
+				Extensions.addFormatInformation(formatMatrix, new Extensions.QRCodeInfos(version, m, level));
+				formatPlanes[level.ordinal()][m] = BitMatrix.fromMatrix(formatMatrix);
+			}
+		}
+	}
+
+	/**
+	 * Get the template of a version, computing it the first time it is requested
+	 *
+	 * @param version the version of the QR code, between 1 and 40 included
+	 * @return the template of the version
+	 */
+	public static VersionTemplate of(int version) {
+		if (version < 1 || version > 40)
+			throw new IllegalArgumentException("QR Code versions must be within 1 and 40 included.");
+
+		VersionTemplate template = TEMPLATES[version];
+		if (template == null) {
+			template = new VersionTemplate(version);
+			TEMPLATES[version] = template;
+		}
+		return template;
+	}
+
+	/**
+	 * Get the template matching the size of a matrix
+	 *
+	 * @param size the size of the matrix
+	 * @return the template of the corresponding version or null if no version has this size
+	 */
+	public static VersionTemplate ofSize(int size) {
+		if (size < 21 || size > 177 || (size - 17) % 4 != 0) return null;
+		return of((size - 17) / 4);
+	}
+
+	/**
+	 * Compute the bitplane of a mask restricted to a region, meaning that a bit is set for every module of the
+	 * region which needs to be inverted by the mask.
+	 *
+	 * @param region the modules on which the mask is applied
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the packed mask pattern
+	 */
+	public static BitMatrix createMaskPlane(BitMatrix region, int mask) {
+		BitMatrix plane = new BitMatrix(region.getWidth(), region.getHeight());
+		for (int x = 0; x < region.getWidth(); x++) {
+			for (int y = 0; y < region.getHeight(); y++) {
+				// maskColor returns black for a light module only if the mask inverts it
+				if (region.get(x, y) && MatrixConstruction.maskColor(x, y, false, mask) == MatrixConstruction.B)
+					plane.set(x, y);
+			}
+		}
+		return plane;
+	}
+
+	// Getters
+	public int getVersion() { return version; }
+	public int getSize() { return size; }
+
+	/**
+	 * @return the dark modules of the function patterns, excluding the format information.
+	 *         The returned matrix must not be modified.
+	 */
+	public BitMatrix getFunctionPatterns() { return functionPatterns; }
+
+	/**
+	 * @return the modules which are not part of a function pattern. The returned matrix must not be modified.
+	 */
+	public BitMatrix getDataRegion() { return dataRegion; }
+
+	/**
+	 * @return the data region in placement order, see MatrixConstruction#placementOrder(BitMatrix).
+	 *         The returned array must not be modified.
+	 */
+	int[] getPlacementOrder() { return placementOrder; }
+
+	/**
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the packed mask pattern, restricted to the data region. The returned matrix must not be modified.
+	 */
+	public BitMatrix getMaskPlane(int mask) { return maskPlanes[mask]; }
+
+	/**
+	 * @return the modules of the format information. The returned matrix must not be modified.
+	 */
+	public BitMatrix getFormatRegion() { return formatRegion; }
+
+	/**
+	 * @param level the error correction level of the QR code
+	 * @param mask the mask id, between 0 and 7 included
+	 * @return the dark modules of the format information. The returned matrix must not be modified.
+	 */
+	public BitMatrix getFormatPlane(Extensions.QRCodeInfos.CorrectionLevel level, int mask) {
+		return formatPlanes[level.ordinal()][mask];
+	}
+}
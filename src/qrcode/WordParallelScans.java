@@ -0,0 +1,149 @@
+package qrcode;
+
+/**
+ * Word-parallel implementation of the scans of the rules N1 and N3 of the penalty evaluation.
+ *
+ * Instead of walking the modules (or the run boundaries) of a line one after the other, every module of a word is
+ * tested at the same time with shifted copies of the line (SIMD within a register): 64 modules of a line are
+ * compared per instruction. The vertical scans are done on the transposed copy of the QR code, just like the
+ * scalar scans of PenaltyEvaluator.
+ *
+ * The scores are identical to the ones of the scalar scans.
+ *
+ * @see PenaltyEvaluator
+ */
+final class WordParallelScans {
+
+	private WordParallelScans() {}
+
+	/**
+	 * Rule N1 with word-parallel operations.
+	 *
+	 * A run of length L >= 5 contains L - 4 windows of 5 modules of the same color and is worth
+	 * PENALITY_N1 + (L - 5) = (L - 4) + 2, so the penalty is the amount of such windows plus 2 for each run
+	 * (each first window of a run). Both are counted with a Long.bitCount over the words of windows.
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @param first the first line to evaluate
+	 * @param step the step between two evaluated lines
+	 * @return the penalty of the lines
+	 */
+	static int runsPenalty(BitMatrix matrix, int first, int step) {
+		int length = matrix.getHeight();
+		int wordsPerLine = matrix.getWordsPerLine();
+		long[] words = matrix.getWords();
+		int windows = 0;
+		int runs = 0;
+
+		for (int x = first; x < matrix.getWidth(); x += step) {
+			int offset = x * wordsPerLine;
+			long previousDark = 0;
+			long previousLight = 0;
+			for (int w = 0; w < wordsPerLine; w++) {
+				long dark = words[offset + w];
+				long nextDark = w + 1 < wordsPerLine ? words[offset + w + 1] : 0;
+				long light = ~dark & validModules(length, w);
+				long nextLight = w + 1 < wordsPerLine ? ~nextDark & validModules(length, w + 1) : 0;
+
+				// a bit is set at every module starting 5 modules of the same color
+				long darkWindows = dark & after(dark, nextDark, 1) & after(dark, nextDark, 2)
+						& after(dark, nextDark, 3) & after(dark, nextDark, 4);
+				long lightWindows = light & after(light, nextLight, 1) & after(light, nextLight, 2)
+						& after(light, nextLight, 3) & after(light, nextLight, 4);
+
+				windows += Long.bitCount(darkWindows) + Long.bitCount(lightWindows);
+				// the first window of a run is a window which does not follow another window
+				runs += Long.bitCount(darkWindows & ~before(darkWindows, previousDark, 1))
+						+ Long.bitCount(lightWindows & ~before(lightWindows, previousLight, 1));
+
+				previousDark = darkWindows;
+				previousLight = lightWindows;
+			}
+		}
+
+		return windows + runs * (MatrixConstruction.PENALITY_N1 - 1);
+	}
+
+	/**
+	 * Rule N3 with word-parallel operations.
+	 *
+	 * The 1:1:3:1:1 core of the pattern (1011101) is searched at every module of a word at the same time, and
+	 * the light modules which have to surround it are then checked with shifted copies of the line. The modules
+	 * outside of the line are light, which adds the light border of the QR code, but only one module of border is
+	 * allowed on each side, as for the bordered matrix of MatrixConstruction#evaluate(int[][]).
+	 *
+	 * @param matrix the packed matrix (use the transposed matrix for the columns)
+	 * @param first the first line to evaluate
+	 * @param step the step between two evaluated lines
+	 * @return the penalty of the lines
+	 */
+	static int finderPenalty(BitMatrix matrix, int first, int step) {
+		int length = matrix.getHeight();
+		int wordsPerLine = matrix.getWordsPerLine();
+		long[] words = matrix.getWords();
+		int patterns = 0;
+
+		for (int x = first; x < matrix.getWidth(); x += step) {
+			int offset = x * wordsPerLine;
+			long previous = 0;
+			for (int w = 0; w < wordsPerLine; w++) {
+				long current = words[offset + w];
+				long next = w + 1 < wordsPerLine ? words[offset + w + 1] : 0;
+
+				// the core 1011101 starts on the module q (the modules after the line are light)
+				long core = current & ~after(current, next, 1) & after(current, next, 2) & after(current, next, 3)
+						& after(current, next, 4) & ~after(current, next, 5) & after(current, next, 6);
+				if (core == 0) {
+					previous = current;
+					continue;
+				}
+
+				long lightBefore = ~before(current, previous, 1);
+				long lightAfter = ~after(current, next, 7);
+
+				// 4 light modules before the core, 1 after it, the first light module can be the border (q >= 3)
+				long patternBefore = core & lightBefore & ~before(current, previous, 2) & ~before(current, previous, 3)
+						& ~before(current, previous, 4) & lightAfter & modulesFrom(3, w);
+				// 1 light module before the core, 4 after it, the last light module can be the border (q <= n - 10)
+				long patternAfter = core & lightBefore & lightAfter & ~after(current, next, 8)
+						& ~after(current, next, 9) & ~after(current, next, 10) & validModules(length - 9, w);
+
+				patterns += Long.bitCount(patternBefore) + Long.bitCount(patternAfter);
+				previous = current;
+			}
+		}
+
+		return patterns * MatrixConstruction.PENALITY_N3;
+	}
+
+	/*
+	 * Word of the modules q + shift aligned on the modules q, where next is the following word of the line
+	 */
+	private static long after(long word, long next, int shift) {
+		return word >>> shift | next << (64 - shift);
+	}
+
+	/*
+	 * Word of the modules q - shift aligned on the modules q, where previous is the preceding word of the line
+	 */
+	private static long before(long word, long previous, int shift) {
+		return word << shift | previous >>> (64 - shift);
+	}
+
+	/*
+	 * Mask of the modules of the word w which are lower than the limit
+	 */
+	private static long validModules(int limit, int w) {
+		int valid = limit - (w << 6);
+		if (valid >= 64) return -1L;
+		if (valid <= 0) return 0L;
+		return (1L << valid) - 1;
+	}
+
+	/*
+	 * Mask of the modules of the word w which are greater or equal to the start
+	 */
+	private static long modulesFrom(int start, int w) {
+		return ~validModules(start, w);
+	}
+}
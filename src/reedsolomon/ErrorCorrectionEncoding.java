@@ -1,5 +1,7 @@
 package reedsolomon;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 public final class ErrorCorrectionEncoding {
 	
 	
@@ -121,6 +123,64 @@ public final class ErrorCorrectionEncoding {
 	}
 	
 	
+	/*
+	 * Generator polynomials already computed with generator(int), indexed by their degree. The atomic array
+	 * publishes a polynomial only once all of its coefficients are written.
+	 */
+	private static final AtomicReferenceArray<int[]> GENERATORS = new AtomicReferenceArray<>(256);
+
+	/**
+	 * Same as encode(int[], int), but the message is read from a range of an array and the error correction
+	 * codewords are written in a range of another one. The division is done in place in the output range with the
+	 * log tables, so nothing is allocated once the generator polynomial of the given degree has been computed.
+	 * @param message the array containing the sequence of bytes from which the ECC are generated
+	 * @param offset the index of the first byte of the sequence
+	 * @param length the number of bytes of the sequence
+	 * @param errorCodewords the array where the ECC are written
+	 * @param errorOffset the index where the first ECC is written
+	 * @param errorCorrectionCodewords the number of ECC to generate
+	 */
+	public static void encode(int[] message, int offset, int length, int[] errorCodewords, int errorOffset,
+							  int errorCorrectionCodewords) {
+		int[] generator = generator(errorCorrectionCodewords);
+		int last = errorOffset + errorCorrectionCodewords - 1;
+		for (int i = errorOffset; i <= last; i++) {
+			errorCodewords[i] = 0;
+		}
+
+		for (int i = offset; i < offset + length; i++) {
+			int factor = (message[i] & 0xFF) ^ errorCodewords[errorOffset];
+			System.arraycopy(errorCodewords, errorOffset + 1, errorCodewords, errorOffset, errorCorrectionCodewords - 1);
+			errorCodewords[last] = 0;
+
+			if (factor != 0) {
+				int power = ANTILOG_TABLE[factor];
+				for (int j = 0; j < errorCorrectionCodewords; j++) {
+					if (generator[j] >= 0) errorCodewords[errorOffset + j] ^= LOG_TABLE[(generator[j] + power) % 255];
+				}
+			}
+		}
+	}
+
+	/*
+	 * Powers of the coefficients of the generator polynomial of a degree, from the highest degree to the lowest one
+	 * and without the leading coefficient (which is always 1). A zero coefficient has the power -1.
+	 */
+	private static int[] generator(int n) {
+		int[] generator = GENERATORS.get(n);
+		if (generator == null) {
+			GalloisNumber[] poly = polynomialGenerator(n);
+			generator = new int[n];
+			for (int j = 0; j < n; j++) {
+				generator[j] = poly[n - 1 - j].p;
+			}
+			if (!GENERATORS.compareAndSet(n, null, generator)) {
+				generator = GENERATORS.get(n);
+			}
+		}
+		return generator;
+	}
+
 	private final static class GalloisNumber{
 		final int p;
 		
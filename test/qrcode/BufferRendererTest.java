@@ -0,0 +1,129 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class BufferRendererTest {
+
+	private static final int CANVAS = 0xFF123456;
+
+	@Test
+	void testRenderIntoIntPixels() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource symbol = ModuleSource.of(2, DataEncoding.byteModeEncoding("Hello, World!", 2));
+		BufferRenderer renderer = new BufferRenderer(3, 2);
+
+		int stride = 120;
+		int offset = 5 * stride + 7;
+		int[] pixels = new int[stride * 110];
+		Arrays.fill(pixels, CANVAS);
+		renderer.render(symbol, pixels, offset, stride);
+
+		for (int x = 0; x < stride; x++) {
+			for (int y = 0; y < 110; y++) {
+				int expected = expected(symbol, 3, 2, x - 7, y - 5, MatrixConstruction.B, MatrixConstruction.W);
+				assertEquals(expected, pixels[y * stride + x], "X: " + x + " Y: " + y);
+			}
+		}
+	}
+
+	@Test
+	void testRenderIntoBytePixels() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource symbol = ModuleSource.of(1, DataEncoding.byteModeEncoding("Hello", 1), 3);
+		int foreground = 0xFF102030;
+		int background = 0x80F0E0D0;
+		BufferRenderer renderer = new BufferRenderer(2, 1, foreground, background);
+
+		for (BufferRenderer.PixelFormat format : BufferRenderer.PixelFormat.values()) {
+			int bytesPerPixel = format.getBytesPerPixel();
+			int stride = 60 * bytesPerPixel + 3;
+			byte[] array = new byte[stride * 60];
+			ByteBuffer direct = ByteBuffer.allocateDirect(array.length);
+			renderer.render(symbol, array, 4 * stride + 2 * bytesPerPixel, stride, format);
+			renderer.render(symbol, direct, 4 * stride + 2 * bytesPerPixel, stride, format);
+			assertEquals(0, direct.position());
+
+			byte[] copy = new byte[array.length];
+			direct.get(copy);
+			assertArrayEquals(array, copy, format.name());
+
+			byte[] pixel = new byte[bytesPerPixel];
+			for (int x = 0; x < 60; x++) {
+				for (int y = 0; y < 60; y++) {
+					int expected = expected(symbol, 2, 1, x - 2, y - 4, foreground, background);
+					byte[] actual = Arrays.copyOfRange(array, y * stride + x * bytesPerPixel,
+							y * stride + (x + 1) * bytesPerPixel);
+					if (expected == CANVAS) {
+						assertArrayEquals(new byte[bytesPerPixel], actual);
+					} else {
+						format.encode(expected, pixel);
+						assertArrayEquals(pixel, actual, format + " X: " + x + " Y: " + y);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testTransparentModulesKeepTarget() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource symbol = ModuleSource.of(1, DataEncoding.byteModeEncoding("Hello", 1), 0);
+		// dark modules in red on the left half, the light modules and the quiet zone left untouched
+		BufferRenderer renderer = new BufferRenderer(2, 4,
+				(x, y, dark) -> !dark ? 0 : x < 10 ? 0xFFFF0000 : MatrixConstruction.B);
+
+		int size = renderer.getWidth(symbol);
+		int[] pixels = new int[size * size];
+		Arrays.fill(pixels, CANVAS);
+		renderer.render(symbol, pixels, 0, size);
+
+		ByteBuffer bytes = ByteBuffer.allocate(size * size * 3);
+		for (int i = 0; i < size * size; i++) bytes.put((byte) 0x12).put((byte) 0x34).put((byte) 0x56);
+		renderer.render(symbol, bytes, 0, size * 3, BufferRenderer.PixelFormat.RGB);
+
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				int mx = x / 2 - 4;
+				int my = y / 2 - 4;
+				boolean dark = mx >= 0 && my >= 0 && mx < 21 && my < 21 && symbol.isDark(mx, my);
+				int expected = !dark ? CANVAS : mx < 10 ? 0xFFFF0000 : MatrixConstruction.B;
+				assertEquals(expected, pixels[y * size + x]);
+
+				int index = (y * size + x) * 3;
+				int rgb = (bytes.get(index) & 0xFF) << 16 | (bytes.get(index + 1) & 0xFF) << 8
+						| bytes.get(index + 2) & 0xFF;
+				assertEquals(expected & 0xFFFFFF, rgb);
+			}
+		}
+	}
+
+	@Test
+	void testRenderOutOfBounds() {
+		BitMatrix symbol = new BitMatrix(21);
+		BufferRenderer renderer = new BufferRenderer(1, 4);
+		assertThrows(IndexOutOfBoundsException.class, () -> renderer.render(symbol, new int[29 * 29], 1, 29));
+		assertThrows(IndexOutOfBoundsException.class, () -> renderer.render(symbol, new int[29 * 29], 0, 28));
+		assertThrows(IndexOutOfBoundsException.class, () -> renderer.render(symbol, new byte[29 * 29], 0, 29,
+				BufferRenderer.PixelFormat.RGB));
+		renderer.render(symbol, new int[29 * 29], 0, 29);
+	}
+
+	/*
+	 * Expected pixel at coordinates relative to the top left corner of the rendering, CANVAS outside of it
+	 */
+	private static int expected(ModuleSource symbol, int moduleSize, int quietZone, int x, int y, int foreground,
+			int background) {
+		int mx = Math.floorDiv(x, moduleSize) - quietZone;
+		int my = Math.floorDiv(y, moduleSize) - quietZone;
+		if (mx < -quietZone || my < -quietZone || mx >= symbol.getWidth() + quietZone
+				|| my >= symbol.getHeight() + quietZone) return CANVAS;
+
+		boolean inside = mx >= 0 && my >= 0 && mx < symbol.getWidth() && my < symbol.getHeight();
+		return inside && symbol.isDark(mx, my) ? foreground : background;
+	}
+}
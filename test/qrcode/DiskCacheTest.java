@@ -0,0 +1,146 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qrcode.Extensions.QRCodeInfos.CorrectionLevel;
+
+class DiskCacheTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testEntriesSurviveReopening() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		Path path = directory.resolve("codes.seg");
+		boolean[] data = DataEncoding.byteModeEncoding("Hello, World!", 3);
+		BitMatrix matrix = BitMatrix.fromMatrix(MatrixConstruction.renderQRCodeMatrix(3, data, 5));
+
+		try (DiskCache cache = new DiskCache(path, 1 << 20)) {
+			cache.putMatrix("Hello, World!", 3, CorrectionLevel.LOW, 5, matrix);
+			cache.put(key("Hello, World!", "png"), new byte[] {1, 2, 3});
+			assertEquals(matrix, cache.getMatrix("Hello, World!", 3, CorrectionLevel.LOW, 5));
+		}
+
+		try (DiskCache cache = new DiskCache(path, 1 << 20)) {
+			assertEquals(2, cache.getEntryCount());
+			assertEquals(matrix, cache.getMatrix("Hello, World!", 3, CorrectionLevel.LOW, 5));
+			assertArrayEquals(new byte[] {1, 2, 3}, cache.get(key("Hello, World!", "png")));
+			assertNull(cache.get(key("Hello, World!", "svg")));
+			assertNull(cache.getMatrix("Hello, World!", 3, CorrectionLevel.LOW, 4));
+		}
+	}
+
+	@Test
+	void testCompactionDropsReplacedRecords() throws IOException {
+		try (DiskCache cache = new DiskCache(directory.resolve("codes.seg"), 1 << 20)) {
+			for (int i = 0; i < 100; i++) {
+				cache.put(key("a", "png"), new byte[1000]);
+				cache.put(key("b", "png"), new byte[] {(byte) i});
+			}
+			assertEquals(2, cache.getEntryCount());
+			assertTrue(cache.getUsedBytes() > 100_000);
+
+			cache.compact();
+			assertEquals(2, cache.getEntryCount());
+			assertEquals(16 + cache.getLiveBytes(), cache.getUsedBytes());
+			assertEquals(1000, cache.get(key("a", "png")).length);
+			assertArrayEquals(new byte[] {99}, cache.get(key("b", "png")));
+		}
+	}
+
+	@Test
+	void testSizeLimitDropsOldestRecords() throws IOException {
+		try (DiskCache cache = new DiskCache(directory.resolve("codes.seg"), 16 * 1024)) {
+			for (int i = 0; i < 100; i++) {
+				cache.put(key("code" + i, "png"), new byte[1000]);
+				assertTrue(cache.getUsedBytes() <= cache.getCapacity());
+			}
+			assertNotNull(cache.get(key("code99", "png")));
+			assertNotNull(cache.get(key("code90", "png")));
+			assertNull(cache.get(key("code0", "png")));
+
+			// larger than the whole segment
+			cache.put(key("huge", "png"), new byte[32 * 1024]);
+			assertNull(cache.get(key("huge", "png")));
+		}
+	}
+
+	@Test
+	void testCompactionLeavesRoomForNextRecords() throws IOException {
+		try (DiskCache cache = new DiskCache(directory.resolve("codes.seg"), 64 * 1024)) {
+			int puts = 1000;
+			for (int i = 0; i < puts; i++) {
+				int compactions = cache.getCompactionCount();
+				cache.put(key("code" + i, "png"), new byte[1000]);
+				if (cache.getCompactionCount() != compactions) {
+					assertTrue(cache.getUsedBytes() <= cache.getCapacity() * DiskCache.LOW_WATER_MARK + 1100);
+				}
+				assertTrue(cache.getUsedBytes() <= cache.getCapacity());
+			}
+			// a compaction frees a quarter of the segment, about 16 records
+			assertTrue(cache.getCompactionCount() <= puts / 10, "COMPACTIONS: " + cache.getCompactionCount());
+			assertEquals(16 + cache.getLiveBytes(), cache.getUsedBytes());
+			for (int i = puts - 40; i < puts; i++) {
+				assertEquals(1000, cache.get(key("code" + i, "png")).length);
+			}
+		}
+	}
+
+	@Test
+	void testSmallerCapacityCompactsOnOpening() throws IOException {
+		Path path = directory.resolve("codes.seg");
+		try (DiskCache cache = new DiskCache(path, 1 << 20)) {
+			for (int i = 0; i < 100; i++) cache.put(key("code" + i, "png"), new byte[1000]);
+		}
+		try (DiskCache cache = new DiskCache(path, 16 * 1024)) {
+			assertTrue(cache.getUsedBytes() <= 12 * 1024);
+			assertEquals(1000, cache.get(key("code99", "png")).length);
+			assertNull(cache.get(key("code0", "png")));
+			cache.put(key("next", "png"), new byte[] {1});
+		}
+		try (DiskCache cache = new DiskCache(path, 16 * 1024)) {
+			assertArrayEquals(new byte[] {1}, cache.get(key("next", "png")));
+			assertEquals(1000, cache.get(key("code99", "png")).length);
+		}
+	}
+
+	@Test
+	void testCorruptedRecordsAreDropped() throws IOException {
+		Path path = directory.resolve("codes.seg");
+		int used;
+		try (DiskCache cache = new DiskCache(path, 1 << 16)) {
+			cache.put(key("first", "png"), new byte[] {1});
+			used = cache.getUsedBytes();
+			cache.put(key("second", "png"), new byte[] {2});
+		}
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.seek(used + 20);
+			file.write(0x7F);
+		}
+
+		try (DiskCache cache = new DiskCache(path, 1 << 16)) {
+			assertArrayEquals(new byte[] {1}, cache.get(key("first", "png")));
+			assertNull(cache.get(key("second", "png")));
+			assertEquals(used, cache.getUsedBytes());
+		}
+	}
+
+	@Test
+	void testClosedCache() throws IOException {
+		DiskCache cache = new DiskCache(directory.resolve("codes.seg"), 1 << 16);
+		cache.close();
+		assertThrows(IllegalStateException.class, () -> cache.get(key("a", "png")));
+	}
+
+	private static EncodedCache.Key key(String payload, String format) {
+		return new EncodedCache.Key(payload, 1, CorrectionLevel.LOW, 0, format, 10);
+	}
+}
@@ -0,0 +1,121 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.Extensions.QRCodeInfos.CorrectionLevel;
+
+class EncodedCacheTest {
+
+	@Test
+	void testHitsAndMisses() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		EncodedCache cache = new EncodedCache(1 << 20);
+		AtomicInteger loads = new AtomicInteger();
+
+		EncodedCache.Key key = new EncodedCache.Key("Hello, World!", 2, CorrectionLevel.LOW, -1, "png", 10);
+		byte[] first = cache.computeIfAbsent(key, k -> {
+			loads.incrementAndGet();
+			return encodePng(k);
+		});
+		byte[] second = cache.computeIfAbsent(
+				new EncodedCache.Key("Hello, World!", 2, CorrectionLevel.LOW, -1, "png", 10), k -> encodePng(k));
+
+		assertSame(first, second);
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertNull(cache.get(new EncodedCache.Key("Hello, World!", 2, CorrectionLevel.LOW, -1, "png", 5)));
+		assertNull(cache.get(new EncodedCache.Key("Hello, World!", 2, CorrectionLevel.LOW, 3, "png", 10)));
+		assertEquals(3, cache.getMissCount());
+
+		cache.invalidate(key);
+		assertNull(cache.get(key));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	void testLeastRecentlyUsedEviction() {
+		EncodedCache cache = new EncodedCache(3 * (128 + 2 + 1000), 1);
+		EncodedCache.Key a = key("a");
+		EncodedCache.Key b = key("b");
+		EncodedCache.Key c = key("c");
+		EncodedCache.Key d = key("d");
+
+		cache.put(a, new byte[1000]);
+		cache.put(b, new byte[1000]);
+		cache.put(c, new byte[1000]);
+		assertNotNull(cache.get(a));
+		cache.put(d, new byte[1000]);
+
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.getEntryCount());
+		assertNotNull(cache.get(a));
+		assertNull(cache.get(b));
+		assertNotNull(cache.get(c));
+		assertNotNull(cache.get(d));
+		assertTrue(cache.getSize() <= cache.getMaxBytes());
+
+		// larger than the whole budget
+		cache.put(key("e"), new byte[1 << 20]);
+		assertNull(cache.get(key("e")));
+		assertEquals(3, cache.getEntryCount());
+	}
+
+	@Test
+	void testConcurrentAccessesStayWithinBudget() throws Exception {
+		EncodedCache cache = new EncodedCache(64 * 1024);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int seed = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 5000; i++) {
+						// skewed accesses: a few hot keys and many cold ones
+						String payload = i % 2 == 0 ? "hot" + i % 4 : "cold" + seed + "-" + i;
+						byte[] bytes = cache.computeIfAbsent(key(payload), k -> k.getPayload().getBytes());
+						assertEquals(payload, new String(bytes));
+					}
+				}));
+			}
+			for (Future<?> future : futures) future.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(40000, cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.getHitCount() >= 15000);
+		assertTrue(cache.getEvictionCount() > 0);
+		assertTrue(cache.getSize() <= cache.getMaxBytes());
+	}
+
+	private static EncodedCache.Key key(String payload) {
+		return new EncodedCache.Key(payload, 1, CorrectionLevel.LOW, 0, "png", 1);
+	}
+
+	private static byte[] encodePng(EncodedCache.Key key) {
+		boolean[] data = DataEncoding.byteModeEncoding(key.getPayload(), key.getVersion());
+		int mask = key.getMask() < 0 ? MatrixConstruction.findBestMasking(key.getVersion(), data) : key.getMask();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			new PngWriter(key.getScale(), 4, Deflater.DEFAULT_COMPRESSION)
+					.write(ModuleSource.of(key.getVersion(), data, mask), output);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return output.toByteArray();
+	}
+}
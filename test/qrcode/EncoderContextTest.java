@@ -0,0 +1,92 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+import reedsolomon.ErrorCorrectionEncoding;
+
+class EncoderContextTest {
+
+	@Test
+	void testInPlaceErrorCorrectionMatchesEncode() {
+		Random random = new Random(18004);
+
+		for (int length = 1; length <= 150; length += 7) {
+			for (int ecc = 7; ecc <= 30; ecc++) {
+				int[] message = new int[length];
+				for (int i = 0; i < length; i++) message[i] = random.nextInt(256);
+
+				int[] actual = new int[ecc + 6];
+				ErrorCorrectionEncoding.encode(message, 0, length, actual, 3, ecc);
+
+				assertArrayEquals(ErrorCorrectionEncoding.encode(message, ecc), Arrays.copyOfRange(actual, 3, 3 + ecc),
+						"LENGTH: " + length + " ECC: " + ecc);
+			}
+		}
+	}
+
+	@Test
+	void testRenderIntoMatchesRendering() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		EncoderContext context = new EncoderContext(40);
+
+		for (Extensions.QRCodeInfos.CorrectionLevel level : Extensions.QRCodeInfos.CorrectionLevel.values()) {
+			Extensions.CORRECTION_LEVEL = level;
+			for (int v = 1; v <= 40; v += 3) {
+				for (String input : new String[] {"", "Hello", "Grüße, 😀 €", RandomStringUtils.randomAlphanumeric(v * 9),
+						RandomStringUtils.randomAlphanumeric(3000)}) {
+					MaskSelector.Selection expected = MaskSelector.select(v, DataEncoding.byteModeEncoding(input, v));
+					MaskSelector.Selection actual = MatrixConstruction.renderInto(context, v, input);
+
+					assertEquals(expected.getMask(), actual.getMask(), "VERSION: " + v + " LEVEL: " + level);
+					assertEquals(expected.getPenalty(), actual.getPenalty(), "VERSION: " + v + " LEVEL: " + level);
+					assertEquals(expected.getSymbol(), actual.getSymbol(), "VERSION: " + v + " LEVEL: " + level);
+				}
+			}
+		}
+
+		Extensions.CORRECTION_LEVEL = Extensions.QRCodeInfos.CorrectionLevel.LOW;
+	}
+
+	@Test
+	void testRenderIntoRejectsVersionsAboveTheContext() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		assertThrows(IllegalArgumentException.class, () -> MatrixConstruction.renderInto(new EncoderContext(5), 6, "Hi"));
+		assertEquals(5, MatrixConstruction.renderInto(new EncoderContext(5), "Hi").getVersion());
+	}
+
+	@Test
+	void testRenderIntoAllocatesNothingInSteadyState() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		MatrixConstruction.USE_EXTENSIONS = true;
+		MaskSelector.Strategy strategy = MaskSelector.STRATEGY;
+		MaskSelector.STRATEGY = MaskSelector.Strategies.EXHAUSTIVE;
+		EncoderContext context = new EncoderContext(10);
+		String[] inputs = {"Hello", "https://www.epfl.ch/", RandomStringUtils.randomAlphanumeric(150)};
+
+		for (int i = 0; i < 2000; i++) {
+			MatrixConstruction.renderInto(context, inputs[i % inputs.length]);
+		}
+
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 300; i++) {
+			MatrixConstruction.renderInto(context, inputs[i % inputs.length]);
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		MaskSelector.STRATEGY = strategy;
+
+		// a few bytes can be allocated by the measure itself, but nothing per rendering
+		assertTrue(allocated < 1024, "Allocated " + allocated + " bytes");
+	}
+}
@@ -0,0 +1,133 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import reedsolomon.ErrorCorrectionEncoding;
+
+class HeadlessTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testCoreDoesNotLoadAwt() throws Exception {
+		URL[] locations = {
+				MatrixConstruction.class.getProtectionDomain().getCodeSource().getLocation(),
+				ErrorCorrectionEncoding.class.getProtectionDomain().getCodeSource().getLocation(),
+				HeadlessTest.class.getProtectionDomain().getCodeSource().getLocation()
+		};
+		try (URLClassLoader loader = new AwtFreeClassLoader(locations)) {
+			Class<?> scenario = loader.loadClass(Scenario.class.getName());
+			assertSame(loader, scenario.getClassLoader());
+			((Runnable) scenario.getDeclaredConstructor().newInstance()).run();
+		}
+	}
+
+	@Test
+	void testDiffWithGoldenImage() {
+		int size = QRCodeInfos.getMatrixSize(1);
+		int[][] matrix = new int[size][size];
+		MatrixConstruction.addFormatInformation(matrix, 0);
+
+		MatrixDiff same = Helpers.diff(matrix, "formatV1M0");
+		assertTrue(same.isSimilar());
+		assertEquals(0, same.getCount());
+
+		matrix[3][8] = matrix[3][8] == MatrixConstruction.B ? MatrixConstruction.W : MatrixConstruction.B;
+		matrix[20][0] = MatrixConstruction.B;
+		File diffImage = directory.resolve("diff.png").toFile();
+		MatrixDiff diff = Helpers.diff(matrix, "formatV1M0", diffImage);
+		assertFalse(diff.isSimilar());
+		assertEquals(2, diff.getCount());
+		assertEquals(3, diff.getX(0));
+		assertEquals(8, diff.getY(0));
+		assertEquals(20, diff.getX(1));
+		assertEquals(0, diff.getY(1));
+		assertTrue(diff.differs(20, 0));
+		assertFalse(diff.differs(0, 20));
+		assertTrue(diffImage.length() > 0);
+		assertThrows(IndexOutOfBoundsException.class, () -> diff.getX(2));
+	}
+
+	@Test
+	void testDiffAllGoldenImages() {
+		Map<String, int[][]> matrices = new HashMap<>();
+		for (String name : new String[] {"patterns", "patternsv4", "testV1M0", "NoDataV1M0"}) {
+			matrices.put(name, Helpers.readMatrix(name));
+		}
+		int[][] wrong = Helpers.readMatrix("testV1M0");
+		wrong[10][10] = ~wrong[10][10];
+		matrices.put("testV1M0", wrong);
+
+		Map<String, MatrixDiff> diffs = Helpers.diffAll(matrices);
+		assertEquals(matrices.keySet(), diffs.keySet());
+		assertTrue(diffs.get("patterns").isSimilar());
+		assertTrue(diffs.get("NoDataV1M0").isSimilar());
+		assertEquals(1, diffs.get("testV1M0").getCount());
+	}
+
+	@Test
+	void testDiffOfDifferentSizes() {
+		assertThrows(IllegalArgumentException.class, () -> MatrixDiff.of(new int[21][21], new int[25][25]));
+	}
+
+	/*
+	 * Encoding and rendering without Helpers, run in a class loader which refuses to load AWT, Swing and ImageIO
+	 */
+	public static final class Scenario implements Runnable {
+		@Override
+		public void run() {
+			MatrixConstruction.USE_EXTENSIONS = true;
+			boolean[] data = DataEncoding.byteModeEncoding("Hello, World!", 4);
+			int[][] matrix = MatrixConstruction.renderQRCodeMatrix(4, data);
+			ModuleSource source = ModuleSource.of(4, data);
+			if (!MatrixDiff.of(source.toMatrix(), matrix).isSimilar())
+				throw new AssertionError("The lazy view differs from the matrix.");
+
+			try {
+				new PngWriter(10, 4, Deflater.DEFAULT_COMPRESSION).write(source, new ByteArrayOutputStream());
+				new VectorWriter(10, 4).writeSvg(source, new StringWriter());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private static final class AwtFreeClassLoader extends URLClassLoader {
+
+		AwtFreeClassLoader(URL[] locations) {
+			super(locations, ClassLoader.getPlatformClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("java.awt.") || name.startsWith("javax.swing.") || name.startsWith("javax.imageio."))
+				throw new ClassNotFoundException(name + " must not be loaded by the core");
+
+			synchronized (getClassLoadingLock(name)) {
+				if (name.startsWith("qrcode.") || name.startsWith("reedsolomon.")) {
+					Class<?> loaded = findLoadedClass(name);
+					if (loaded == null) loaded = findClass(name);
+					if (resolve) resolveClass(loaded);
+					return loaded;
+				}
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+class HelpersTest {
+
+	@Test
+	void testRenderMatchesMatrix() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 6, 40}) {
+			int[][] matrix = MatrixConstruction.renderQRCodeMatrix(version,
+					DataEncoding.byteModeEncoding("Hello, World!", version));
+			for (int type : new int[] {BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_GRAY}) {
+				int[] scales = {1, 3, 10};
+				BufferedImage[] images = Helpers.render(BitMatrix.fromMatrix(matrix), scales, 4, type);
+				assertEquals(scales.length, images.length);
+				for (int i = 0; i < scales.length; i++) {
+					assertEquals(type, images[i].getType());
+					PngWriterTest.assertImageEquals(matrix, scales[i], 4, images[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testRenderRectangularSymbol() {
+		BitMatrix symbol = new BitMatrix(43, 7);
+		for (int x = 0; x < 43; x += 2) symbol.set(x, x % 7);
+
+		BufferedImage image = Helpers.render(symbol, 5, 2, BufferedImage.TYPE_BYTE_BINARY);
+		PngWriterTest.assertImageEquals(symbol.toMatrix(), 5, 2, image);
+	}
+
+	@Test
+	void testRenderInvalidArguments() {
+		BitMatrix symbol = new BitMatrix(21);
+		assertThrows(IllegalArgumentException.class, () -> Helpers.render(symbol, 1, 4, BufferedImage.TYPE_INT_ARGB));
+		assertThrows(IllegalArgumentException.class, () -> Helpers.render(symbol, 0, 4, BufferedImage.TYPE_BYTE_GRAY));
+		assertThrows(IllegalArgumentException.class, () -> Helpers.render(symbol, 1, -1, BufferedImage.TYPE_BYTE_GRAY));
+	}
+}
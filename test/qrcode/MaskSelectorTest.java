@@ -0,0 +1,133 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class MaskSelectorTest {
+
+	/*
+	 * Reference implementation: render the QR code for every mask and keep the first one with the lowest penalty.
+	 */
+	private static int[] referenceSelection(int version, boolean[] data) {
+		int mask = -1;
+		int penalty = -1;
+		for (int m = 0; m <= 7; m++) {
+			int p = MatrixConstruction.evaluate(MatrixConstruction.renderQRCodeMatrix(version, data, m));
+			if (p < penalty || penalty == -1) {
+				mask = m;
+				penalty = p;
+			}
+		}
+		return new int[] {mask, penalty};
+	}
+
+	@Test
+	void testSelectionMatchesRenderingEveryMaskWithoutExtensions() {
+		MatrixConstruction.USE_EXTENSIONS = false;
+
+		for (int v = 1; v <= 4; v++) {
+			String input = RandomStringUtils.randomAlphanumeric(v * 9);
+			boolean[] data = DataEncoding.byteModeEncoding(input, v);
+
+			int[] expected = referenceSelection(v, data);
+			MaskSelector.Selection selection = MaskSelector.select(v, data);
+
+			assertEquals(expected[0], selection.getMask(), "Wrong mask - VERSION: " + v + " TEXT: " + input);
+			assertEquals(expected[1], selection.getPenalty(), "Wrong penalty - VERSION: " + v + " TEXT: " + input);
+			assertArrayEquals(MatrixConstruction.renderQRCodeMatrix(v, data, expected[0]), selection.toMatrix(),
+					"Wrong matrix - VERSION: " + v + " TEXT: " + input);
+		}
+
+		MatrixConstruction.USE_EXTENSIONS = true;
+	}
+
+	@Test
+	void testSelectionMatchesRenderingEveryMaskOnAllECC() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (Extensions.QRCodeInfos.CorrectionLevel level : Extensions.QRCodeInfos.CorrectionLevel.values()) {
+			Extensions.CORRECTION_LEVEL = level;
+			for (int v = 1; v <= 40; v += 3) {
+				String input = RandomStringUtils.randomAlphanumeric(v * 5);
+				boolean[] data = DataEncoding.byteModeEncoding(input, v);
+
+				int[] expected = referenceSelection(v, data);
+				MaskSelector.Selection selection = MaskSelector.select(v, data);
+
+				assertEquals(expected[0], selection.getMask(), "Wrong mask - VERSION: " + v + " TEXT: " + input);
+				assertEquals(expected[1], selection.getPenalty(), "Wrong penalty - VERSION: " + v + " TEXT: " + input);
+				assertArrayEquals(MatrixConstruction.renderQRCodeMatrix(v, data, expected[0]), selection.toMatrix(),
+						"Wrong matrix - VERSION: " + v + " TEXT: " + input);
+			}
+		}
+
+		Extensions.CORRECTION_LEVEL = Extensions.QRCodeInfos.CorrectionLevel.LOW;
+	}
+
+	@Test
+	void testListenerIsNotified() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		boolean[] data = DataEncoding.byteModeEncoding("Hello", 1);
+		int[] notifiedMask = {-1};
+
+		MaskSelector.LISTENER = selection -> notifiedMask[0] = selection.getMask();
+		int mask = MatrixConstruction.findBestMasking(1, data);
+		MaskSelector.LISTENER = null;
+
+		assertEquals(mask, notifiedMask[0]);
+	}
+
+	@Test
+	void testEveryStrategyReportsItsSelection() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int v = 1; v <= 40; v += 5) {
+			String input = RandomStringUtils.randomAlphanumeric(v * 5);
+			boolean[] data = DataEncoding.byteModeEncoding(input, v);
+			int bestPenalty = referenceSelection(v, data)[1];
+
+			for (MaskSelector.Strategies strategy : MaskSelector.Strategies.values()) {
+				MaskSelector.Selection selection = MaskSelector.select(v, data, strategy, Long.MAX_VALUE / 2);
+				int[][] expected = MatrixConstruction.renderQRCodeMatrix(v, data, selection.getMask());
+
+				assertArrayEquals(expected, selection.toMatrix(), "Wrong matrix - STRATEGY: " + strategy);
+				assertEquals(MatrixConstruction.evaluate(expected), selection.getPenalty(),
+						"Wrong penalty - STRATEGY: " + strategy);
+				assertTrue(selection.getPenalty() >= bestPenalty, "Better than exhaustive - STRATEGY: " + strategy);
+			}
+		}
+	}
+
+	@Test
+	void testAdaptiveStrategyFallsBackWhenTheBudgetIsSpent() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(100), 10);
+
+		MaskSelector.Selection unlimited = MaskSelector.select(10, data, MaskSelector.Strategies.ADAPTIVE, Long.MAX_VALUE / 2);
+		assertEquals(MaskSelector.Strategies.EXHAUSTIVE, unlimited.getStrategy());
+		assertEquals(MaskSelector.select(10, data, MaskSelector.Strategies.EXHAUSTIVE, 0).getMask(), unlimited.getMask());
+
+		MaskSelector.Selection spent = MaskSelector.select(10, data, MaskSelector.Strategies.ADAPTIVE, 0);
+		assertEquals(MaskSelector.Strategies.CHEAP_RULES, spent.getStrategy());
+		assertEquals(MaskSelector.select(10, data, MaskSelector.Strategies.CHEAP_RULES, 0).getMask(), spent.getMask());
+	}
+
+	@Test
+	void testParallelStrategyMatchesExhaustive() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int v = 1; v <= 40; v += 3) {
+			boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(v * 7), v);
+
+			MaskSelector.Selection exhaustive = MaskSelector.select(v, data, MaskSelector.Strategies.EXHAUSTIVE, 0);
+			MaskSelector.Selection parallel = MaskSelector.select(v, data, MaskSelector.Strategies.PARALLEL, 0);
+
+			assertEquals(exhaustive.getMask(), parallel.getMask(), "Wrong mask - VERSION: " + v);
+			assertEquals(exhaustive.getPenalty(), parallel.getPenalty(), "Wrong penalty - VERSION: " + v);
+			assertEquals(v < MaskSelector.PARALLEL_MIN_VERSION ?
+					MaskSelector.Strategies.EXHAUSTIVE : MaskSelector.Strategies.PARALLEL, parallel.getStrategy());
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class MicroQRCodeTest {
+
+	private static final Extensions.QRCodeInfos.CorrectionLevel LOW = Extensions.QRCodeInfos.CorrectionLevel.LOW;
+	private static final Extensions.QRCodeInfos.CorrectionLevel MEDIUM = Extensions.QRCodeInfos.CorrectionLevel.MEDIUM;
+	private static final Extensions.QRCodeInfos.CorrectionLevel QUARTILE = Extensions.QRCodeInfos.CorrectionLevel.QUARTILE;
+
+	@Test
+	void testSizesAndFunctionPatterns() {
+		for (int version = MicroQRCode.M1; version >= MicroQRCode.M4; version--) {
+			int[][] matrix = MicroQRCode.constructMatrix(version, LOW, 0);
+			int size = MicroQRCode.getMatrixSize(version);
+			assertEquals(9 - 2 * version, size);
+			assertEquals(size, matrix.length);
+
+			// finder pattern and its separator
+			for (int i = 0; i < 8; i++) {
+				for (int j = 0; j < 8; j++) {
+					int distance = Math.max(Math.abs(i - 3), Math.abs(j - 3));
+					int expected = distance == 2 || distance == 4 ? MatrixConstruction.W : MatrixConstruction.B;
+					assertEquals(expected, matrix[i][j], "VERSION: " + version + " (" + i + ", " + j + ")");
+				}
+			}
+
+			// timing patterns on the first line and column
+			for (int i = 8; i < size; i++) {
+				int expected = i % 2 == 0 ? MatrixConstruction.B : MatrixConstruction.W;
+				assertEquals(expected, matrix[i][0]);
+				assertEquals(expected, matrix[0][i]);
+			}
+
+			assertEquals(size * size - 64 - 2 * (size - 8) - 15, BitMatrix.emptyModules(matrix).bitCount());
+		}
+	}
+
+	@Test
+	void testFormatInformation() {
+		// M1 with the mask 00 only has the mask pattern of the format information
+		assertEquals(0b100010001000101, MicroQRCode.getFormatInformation(MicroQRCode.M1, LOW, 0));
+
+		for (int version = MicroQRCode.M1; version >= MicroQRCode.M4; version--) {
+			for (Extensions.QRCodeInfos.CorrectionLevel level : new Extensions.QRCodeInfos.CorrectionLevel[] {LOW, MEDIUM}) {
+				for (int mask = 0; mask < 4; mask++) {
+					int format = MicroQRCode.getFormatInformation(version, level, mask) ^ 0b100010001000101;
+					assertEquals(MicroQRCode.getSymbolNumber(version, level) << 2 | mask, format >> 10);
+
+					// the BCH code is the remainder of the division by the generator polynomial
+					int remainder = format;
+					for (int i = 14; i >= 10; i--) {
+						if ((remainder >> i & 1) != 0) remainder ^= 0b10100110111 << (i - 10);
+					}
+					assertEquals(0, remainder);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testCapacities() {
+		assertEquals(5, decodeCount(MicroQRCode.encode("0123456789", MicroQRCode.M1, LOW), 1, 3));
+		assertEquals(6, decodeCount(MicroQRCode.encode("HELLO WORLD", MicroQRCode.M2, LOW), 2, 3));
+		assertEquals(9, decodeCount(MicroQRCode.encode("hello world", MicroQRCode.M3, LOW), 3, 4));
+		assertEquals(35, decodeCount(MicroQRCode.encode(RandomStringUtils.randomNumeric(50), MicroQRCode.M4, LOW), 4, 6));
+		assertEquals(9, decodeCount(MicroQRCode.encode(RandomStringUtils.randomAlphanumeric(20), MicroQRCode.M4, QUARTILE), 4, 5));
+
+		int[] dataBits = {20, 40, 32, 84, 68, 128, 112, 80};
+		int[] eccCodewords = {2, 5, 6, 6, 8, 8, 10, 14};
+		int[][] symbols = {{-1, 0}, {-2, 0}, {-2, 1}, {-3, 0}, {-3, 1}, {-4, 0}, {-4, 1}, {-4, 2}};
+		for (int s = 0; s < symbols.length; s++) {
+			Extensions.QRCodeInfos.CorrectionLevel level = Extensions.QRCodeInfos.CorrectionLevel.values()[symbols[s][1]];
+			boolean[] data = MicroQRCode.encode("123", symbols[s][0], level);
+
+			assertEquals(s, MicroQRCode.getSymbolNumber(symbols[s][0], level));
+			assertEquals(dataBits[s] + eccCodewords[s] * 8, data.length, "SYMBOL: " + s);
+			// the data and the error correction fill the data region exactly
+			assertEquals(BitMatrix.emptyModules(MicroQRCode.constructMatrix(symbols[s][0], level, 0)).bitCount(), data.length);
+		}
+	}
+
+	@Test
+	void testUnsupportedSymbols() {
+		assertThrows(UnsupportedOperationException.class, () -> MicroQRCode.encode("HELLO", MicroQRCode.M1, LOW));
+		assertThrows(UnsupportedOperationException.class, () -> MicroQRCode.encode("hello", MicroQRCode.M2, LOW));
+		assertThrows(UnsupportedOperationException.class, () -> MicroQRCode.encode("123", MicroQRCode.M3, QUARTILE));
+		assertThrows(UnsupportedOperationException.class, () -> MicroQRCode.encode("123", -5, LOW));
+		assertDoesNotThrow(() -> MicroQRCode.encode("123", MicroQRCode.M1, QUARTILE));
+	}
+
+	@Test
+	void testBestMaskingHasTheHighestEvaluation() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version = MicroQRCode.M2; version >= MicroQRCode.M4; version--) {
+			for (int k = 0; k < 20; k++) {
+				boolean[] data = MicroQRCode.encode(RandomStringUtils.randomAlphanumeric(k).toUpperCase(), version, LOW);
+				int best = MatrixConstruction.findBestMasking(version, data);
+
+				for (int mask = 0; mask < 4; mask++) {
+					int score = MicroQRCode.evaluate(MatrixConstruction.renderQRCodeMatrix(version, data, mask));
+					int bestScore = MicroQRCode.evaluate(MatrixConstruction.renderQRCodeMatrix(version, data, best));
+					assertTrue(mask < best ? score < bestScore : score <= bestScore, "VERSION: " + version + " MASK: " + mask);
+				}
+				assertArrayEquals(MatrixConstruction.renderQRCodeMatrix(version, data, best),
+						MatrixConstruction.renderQRCodeMatrix(version, data));
+			}
+		}
+	}
+
+	/*
+	 * Count of the characters of the encoded data, after the mode indicator
+	 */
+	private static int decodeCount(boolean[] data, int n, int countBits) {
+		int count = 0;
+		for (int i = n - 1; i < n - 1 + countBits; i++) {
+			count = count << 1 | (data[i] ? 1 : 0);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,63 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class ModuleSourceTest {
+
+	@Test
+	void testLazyViewMatchesRendering() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version = 1; version <= 40; version += 3) {
+			boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(version * 10), version);
+			for (int mask = 0; mask < 8; mask++) {
+				int[][] expected = MatrixConstruction.renderQRCodeMatrix(version, data, mask);
+				ModuleSource source = ModuleSource.of(version, data, mask);
+
+				assertEquals(expected.length, source.getWidth());
+				assertEquals(expected.length, source.getHeight());
+				assertArrayEquals(expected, source.toMatrix(), "VERSION: " + version + " MASK: " + mask);
+			}
+		}
+	}
+
+	@Test
+	void testRowsMatchModules() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 2, 14, 15, 40}) {
+			boolean[] data = DataEncoding.byteModeEncoding("Hello, World!", version);
+			ModuleSource source = ModuleSource.of(version, data);
+			int[][] matrix = MatrixConstruction.renderQRCodeMatrix(version, data);
+			BitMatrix packed = BitMatrix.fromMatrix(matrix);
+
+			Iterator<long[]> rows = source.rows();
+			for (int y = 0; y < source.getHeight(); y++) {
+				assertTrue(rows.hasNext());
+				long[] row = rows.next();
+				// the lazy rows are gathered word by word, the ones of the packed matrix module by module
+				assertArrayEquals(packed.getRow(y, null), row, "VERSION: " + version + " ROW: " + y);
+
+				int[] colors = source.getRowColors(y, null);
+				for (int x = 0; x < source.getWidth(); x++) {
+					assertEquals(matrix[x][y], colors[x]);
+					assertEquals((row[x >>> 6] & 1L << x) != 0, matrix[x][y] == MatrixConstruction.B);
+				}
+			}
+			assertFalse(rows.hasNext());
+			assertThrows(NoSuchElementException.class, rows::next);
+		}
+	}
+
+	@Test
+	void testInvalidMask() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		assertThrows(IllegalArgumentException.class, () -> ModuleSource.of(1, new boolean[0], -1));
+	}
+}
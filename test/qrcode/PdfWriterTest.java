@@ -0,0 +1,95 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class PdfWriterTest {
+
+	@Test
+	void testDocumentStructure() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource first = ModuleSource.of(1, DataEncoding.byteModeEncoding("First", 1));
+		ModuleSource second = ModuleSource.of(2, DataEncoding.byteModeEncoding("Second", 2));
+
+		for (boolean compress : new boolean[] {false, true}) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (PdfWriter pdf = new PdfWriter(output, compress)) {
+				for (int page = 0; page < 3; page++) {
+					pdf.beginPage(595, 841.89);
+					pdf.drawSymbol(first, 72, 600, 4);
+					pdf.drawSymbol(second, 300, 600, 2.5);
+					pdf.drawSymbol(first, 72, 300, 8);
+					pdf.endPage();
+				}
+				assertEquals(3, pdf.getPageCount());
+			}
+
+			String document = new String(output.toByteArray(), StandardCharsets.ISO_8859_1);
+			assertTrue(document.startsWith("%PDF-1.4\n"));
+			assertTrue(document.endsWith("%%EOF\n"));
+			// identical symbols share their XObject, on every page
+			assertEquals(2, count(document, "/Subtype /Form"));
+			assertEquals(3, count(document, "/Type /Page "));
+			assertTrue(document.contains("/Count 3"));
+			assertTrue(document.contains("/MediaBox [0 0 595 841.89]"));
+			assertEquals(compress ? 5 : 0, count(document, "/FlateDecode"));
+
+			if (!compress) {
+				assertEquals(3, count(document, "q 4 0 0 4 72 600 cm /S"));
+				assertEquals(3, count(document, "q 2.5 0 0 2.5 300 600 cm /S"));
+				assertEquals(3, count(document, "q 8 0 0 8 72 300 cm /S"));
+				assertTrue(document.contains(" re\n"));
+			}
+			assertCrossReferences(document);
+		}
+	}
+
+	@Test
+	void testPageStates() throws IOException {
+		PdfWriter pdf = new PdfWriter(new ByteArrayOutputStream(), true);
+		assertThrows(IllegalStateException.class, () -> pdf.drawSymbol(new BitMatrix(21), 0, 0, 1));
+		assertThrows(IllegalStateException.class, pdf::endPage);
+		pdf.beginPage(100, 100);
+		assertThrows(IllegalStateException.class, () -> pdf.beginPage(100, 100));
+		assertThrows(IllegalStateException.class, pdf::close);
+		pdf.endPage();
+		pdf.close();
+		assertThrows(IllegalStateException.class, () -> pdf.beginPage(100, 100));
+	}
+
+	/*
+	 * Check that every entry of the cross-reference table points to its object, and startxref to the table
+	 */
+	private static void assertCrossReferences(String document) {
+		Matcher start = Pattern.compile("startxref\n(\\d+)\n").matcher(document);
+		assertTrue(start.find());
+		int xref = Integer.parseInt(start.group(1));
+		assertTrue(document.startsWith("xref\n0 ", xref));
+
+		Matcher header = Pattern.compile("xref\n0 (\\d+)\n").matcher(document);
+		assertTrue(header.find(xref));
+		int size = Integer.parseInt(header.group(1));
+		int entries = header.end();
+		assertEquals("0000000000 65535 f \n", document.substring(entries, entries + 20));
+		for (int object = 1; object < size; object++) {
+			String entry = document.substring(entries + object * 20, entries + (object + 1) * 20);
+			assertTrue(entry.endsWith(" 00000 n \n"), entry);
+			int offset = Integer.parseInt(entry.substring(0, 10));
+			assertTrue(document.startsWith(object + " 0 obj\n", offset), "OBJECT: " + object);
+		}
+		assertTrue(document.contains("/Size " + size + " "));
+	}
+
+	private static int count(String text, String pattern) {
+		int count = 0;
+		for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) count++;
+		return count;
+	}
+}
@@ -0,0 +1,124 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class PenaltyEvaluatorTest {
+
+	private static int[][] randomMatrix(Random random, int size, int darkPercentage) {
+		int[][] matrix = new int[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				matrix[x][y] = random.nextInt(100) < darkPercentage ? MatrixConstruction.B : MatrixConstruction.W;
+			}
+		}
+		return matrix;
+	}
+
+	private static int evaluateWith(PenaltyEvaluator.Scans scans, BitMatrix symbol) {
+		PenaltyEvaluator.Scans previous = PenaltyEvaluator.SCANS;
+		PenaltyEvaluator.SCANS = scans;
+		try {
+			return PenaltyEvaluator.evaluate(symbol);
+		} finally {
+			PenaltyEvaluator.SCANS = previous;
+		}
+	}
+
+	/*
+	 * Matrix made of random pieces of the 1:1:3:1:1 pattern and of light runs, to have a lot of finder-like patterns
+	 * (including on the borders of the matrix and of the words)
+	 */
+	private static int[][] finderLikeMatrix(Random random, int size) {
+		int[] pieces = {0b1011101, 0b0000, 0b0, 0b1};
+		int[] piecesLength = {7, 4, 1, 1};
+		int[][] matrix = new int[size][size];
+		for (int x = 0; x < size; x++) {
+			int y = 0;
+			while (y < size) {
+				int piece = random.nextInt(pieces.length);
+				for (int i = piecesLength[piece] - 1; i >= 0 && y < size; i--, y++) {
+					matrix[x][y] = (pieces[piece] >> i & 1) == 1 ? MatrixConstruction.B : MatrixConstruction.W;
+				}
+			}
+		}
+		return matrix;
+	}
+
+	@Test
+	void testWordParallelScansMatchScalarScans() {
+		Random random = new Random(1011101);
+
+		for (int size = 1; size <= 177; size++) {
+			for (int[][] matrix : new int[][][] {randomMatrix(random, size, 50), randomMatrix(random, size, 80),
+					finderLikeMatrix(random, size)}) {
+				BitMatrix symbol = BitMatrix.fromMatrix(matrix);
+				int expected = MatrixConstruction.evaluate(matrix);
+
+				assertEquals(expected, evaluateWith(PenaltyEvaluator.Scans.SCALAR, symbol), "SCALAR - SIZE: " + size);
+				assertEquals(expected, evaluateWith(PenaltyEvaluator.Scans.WORD_PARALLEL, symbol),
+						"WORD_PARALLEL - SIZE: " + size);
+			}
+		}
+	}
+
+	@Test
+	void testSameScoresOnRandomMatrices() {
+		Random random = new Random(18004);
+
+		for (int size = 1; size <= 177; size += 4) {
+			for (int darkPercentage : new int[] {0, 10, 50, 90, 100}) {
+				int[][] matrix = randomMatrix(random, size, darkPercentage);
+
+				assertEquals(MatrixConstruction.evaluate(matrix), PenaltyEvaluator.evaluate(BitMatrix.fromMatrix(matrix)),
+						"TEST FAILED - SIZE: " + size + " DARK: " + darkPercentage + "%");
+			}
+		}
+	}
+
+	@Test
+	void testSameScoresAroundWordBoundaries() {
+		Random random = new Random(40);
+
+		for (int size = 60; size <= 132; size++) {
+			int[][] matrix = randomMatrix(random, size, 50);
+
+			assertEquals(MatrixConstruction.evaluate(matrix), PenaltyEvaluator.evaluate(BitMatrix.fromMatrix(matrix)),
+					"TEST FAILED - SIZE: " + size);
+		}
+	}
+
+	@Test
+	void testSameScoresOnQRCodes() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int v = 1; v <= 40; v++) {
+			for (int m = 0; m <= 7; m++) {
+				String input = RandomStringUtils.randomAlphanumeric(v * 9);
+				int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(v, DataEncoding.byteModeEncoding(input, v), m);
+
+				assertEquals(MatrixConstruction.evaluate(qrCode), PenaltyEvaluator.evaluate(BitMatrix.fromMatrix(qrCode)),
+						"TEST FAILED - VERSION: " + v + " MASK: " + m + " TEXT: " + input);
+			}
+		}
+	}
+
+	@Test
+	void testBoundedEvaluation() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(10, DataEncoding.byteModeEncoding("Bounded", 10), 3);
+		BitMatrix symbol = BitMatrix.fromMatrix(qrCode);
+		BitMatrix columns = new BitMatrix(symbol.getWidth());
+		int penalty = MatrixConstruction.evaluate(qrCode);
+
+		assertEquals(penalty, PenaltyEvaluator.evaluate(symbol, columns, Integer.MAX_VALUE));
+		assertEquals(penalty, PenaltyEvaluator.evaluate(symbol, columns, penalty));
+		assertTrue(PenaltyEvaluator.evaluate(symbol, columns, penalty - 1) > penalty - 1);
+		assertTrue(PenaltyEvaluator.evaluate(symbol, columns, 0) > 0);
+		assertTrue(PenaltyEvaluator.cheapPenalty(symbol) <= penalty);
+	}
+}
@@ -0,0 +1,51 @@
+package qrcode;
+
+import org.apache.commons.lang3.RandomStringUtils;
+
+/**
+ * Compare the rendering of QR codes with a given mask through the generic int[][] path and through the kernels.
+ *
+ * Run it as a plain main class (with the JIT warmed up by the first rounds), the timings of the last round being
+ * the meaningful ones.
+ */
+public class PlacementBenchmark {
+
+	private static final int ROUNDS = 5;
+	private static final int RENDERINGS = 2000;
+	private static final int MASK = 5;
+
+	public static void main(String[] args) {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 10, 25, 40}) {
+			boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(version * 40), version);
+			long generic = 0;
+			long kernels = 0;
+			long packed = 0;
+
+			for (int round = 0; round < ROUNDS; round++) {
+				PlacementKernel.ENABLED = false;
+				generic = time(() -> MatrixConstruction.renderQRCodeMatrix(version, data, MASK));
+				PlacementKernel.ENABLED = true;
+				kernels = time(() -> MatrixConstruction.renderQRCodeMatrix(version, data, MASK));
+				PlacementKernel kernel = PlacementKernel.of(version, Extensions.CORRECTION_LEVEL, MASK);
+				BitMatrix symbol = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+				packed = time(() -> kernel.renderInto(data, symbol));
+			}
+			PlacementKernel.ENABLED = false;
+
+			System.out.printf("Version %2d: generic %8.1f us, kernel %8.1f us (x%.1f), packed only %6.1f us (x%.1f)%n",
+					version, generic / 1e3, kernels / 1e3, (double) generic / kernels, packed / 1e3,
+					(double) generic / packed);
+		}
+	}
+
+	/*
+	 * Average time of a rendering, in nanoseconds
+	 */
+	private static long time(Runnable rendering) {
+		long start = System.nanoTime();
+		for (int i = 0; i < RENDERINGS; i++) rendering.run();
+		return (System.nanoTime() - start) / RENDERINGS;
+	}
+}
@@ -0,0 +1,49 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class PlacementKernelTest {
+
+	@Test
+	void testKernelsMatchRendering() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (Extensions.QRCodeInfos.CorrectionLevel level : Extensions.QRCodeInfos.CorrectionLevel.values()) {
+			Extensions.CORRECTION_LEVEL = level;
+			for (int version = 1; version <= 40; version += 3) {
+				boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(version * 8), version);
+				for (int mask = 0; mask < 8; mask++) {
+					PlacementKernel.ENABLED = false;
+					int[][] expected = MatrixConstruction.renderQRCodeMatrix(version, data, mask);
+					PlacementKernel.ENABLED = true;
+					int[][] actual = MatrixConstruction.renderQRCodeMatrix(version, data, mask);
+					PlacementKernel.ENABLED = false;
+
+					assertArrayEquals(expected, actual, "VERSION: " + version + " LEVEL: " + level + " MASK: " + mask);
+				}
+			}
+		}
+
+		Extensions.CORRECTION_LEVEL = Extensions.QRCodeInfos.CorrectionLevel.LOW;
+	}
+
+	@Test
+	void testKernelsAreCachedAndReusable() {
+		PlacementKernel kernel = PlacementKernel.of(7, Extensions.QRCodeInfos.CorrectionLevel.MEDIUM, 3);
+		assertSame(kernel, PlacementKernel.of(7, Extensions.QRCodeInfos.CorrectionLevel.MEDIUM, 3));
+
+		// rendering again in the same matrix overwrites the previous QR code
+		boolean[] first = new boolean[400];
+		boolean[] second = new boolean[400];
+		for (int i = 0; i < first.length; i++) first[i] = i % 3 == 0;
+		BitMatrix symbol = kernel.render(first);
+		kernel.renderInto(second, symbol);
+		assertEquals(kernel.render(second), symbol);
+
+		assertThrows(IllegalArgumentException.class, () -> kernel.renderInto(second, new BitMatrix(21)));
+		assertThrows(IllegalArgumentException.class, () -> PlacementKernel.of(7, Extensions.QRCodeInfos.CorrectionLevel.LOW, 8));
+	}
+}
@@ -0,0 +1,75 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+class PngWriterTest {
+
+	@Test
+	void testImageMatchesMatrix() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 7, 40}) {
+			int[][] matrix = MatrixConstruction.renderQRCodeMatrix(version,
+					DataEncoding.byteModeEncoding("Hello, World!", version));
+			for (int[] settings : new int[][] {{1, 0, 0}, {3, 4, 6}, {10, 4, 9}, {7, 2, Deflater.DEFAULT_COMPRESSION}}) {
+				PngWriter writer = new PngWriter(settings[0], settings[1], settings[2]);
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				writer.write(matrix, output);
+
+				assertImageEquals(matrix, writer.getScale(), writer.getQuietZone(),
+						ImageIO.read(new ByteArrayInputStream(output.toByteArray())));
+			}
+		}
+	}
+
+	@Test
+	void testChannelOutput() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		boolean[] data = DataEncoding.byteModeEncoding("Hello, World!", 40);
+
+		PngWriter writer = new PngWriter(10, 4, Deflater.BEST_SPEED);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		writer.write(ModuleSource.of(40, data, 2), Channels.newChannel(output));
+
+		int[][] matrix = MatrixConstruction.renderQRCodeMatrix(40, data, 2);
+		assertImageEquals(matrix, writer.getScale(), writer.getQuietZone(),
+				ImageIO.read(new ByteArrayInputStream(output.toByteArray())));
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new PngWriter(0, 4, 6));
+		assertThrows(IllegalArgumentException.class, () -> new PngWriter(1, -1, 6));
+		assertThrows(IllegalArgumentException.class, () -> new PngWriter(1, 4, 10));
+	}
+
+	/*
+	 * Check that an image is the rendering of a matrix with black and white modules, also used by HelpersTest
+	 */
+	static void assertImageEquals(int[][] matrix, int scale, int quietZone, BufferedImage image) {
+		int border = quietZone * scale;
+		assertEquals((matrix.length + 2 * quietZone) * scale, image.getWidth());
+		assertEquals((matrix[0].length + 2 * quietZone) * scale, image.getHeight());
+
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				int mx = Math.floorDiv(x - border, scale);
+				int my = Math.floorDiv(y - border, scale);
+				boolean inside = mx >= 0 && my >= 0 && mx < matrix.length && my < matrix[0].length;
+				int expected = inside ? matrix[mx][my] : MatrixConstruction.W;
+				assertEquals(expected, image.getRGB(x, y), "X: " + x + " Y: " + y);
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class RMQRCodeTest {
+
+	private static final Extensions.QRCodeInfos.CorrectionLevel MEDIUM = Extensions.QRCodeInfos.CorrectionLevel.MEDIUM;
+	private static final Extensions.QRCodeInfos.CorrectionLevel HIGH = Extensions.QRCodeInfos.CorrectionLevel.HIGH;
+
+	/*
+	 * Remainder bits of every version (see Table 3 of ISO/IEC 23941:2022)
+	 */
+	private static final int[] REMAINDER_BITS = {
+			0, 3, 5, 6, 1, 2, 3, 1, 4, 5, 2, 1, 0, 2, 7, 6, 4, 1, 6, 4, 3, 0, 1, 4, 6, 7, 2, 1, 2, 0, 3, 4
+	};
+
+	@Test
+	void testCodewordsFillTheDataModules() {
+		assertEquals(32, RMQRCode.Version.values().length);
+
+		for (RMQRCode.Version version : RMQRCode.Version.values()) {
+			int[][] matrix = RMQRCode.constructMatrix(version, MEDIUM);
+			assertEquals(version.getWidth(), matrix.length);
+			assertEquals(version.getHeight(), matrix[0].length);
+
+			int dataModules = BitMatrix.emptyModules(matrix).bitCount();
+			assertEquals(version.getCodeWordsLength() * 8 + REMAINDER_BITS[version.ordinal()], dataModules, version.name());
+			assertEquals(version.getCodeWordsLength() * 8, RMQRCode.encode("", version, HIGH).length, version.name());
+			assertTrue(version.getDataLength(HIGH) < version.getDataLength(MEDIUM), version.name());
+		}
+	}
+
+	@Test
+	void testFunctionPatterns() {
+		for (RMQRCode.Version version : RMQRCode.Version.values()) {
+			int[][] matrix = RMQRCode.constructMatrix(version, MEDIUM);
+			int width = version.getWidth();
+			int height = version.getHeight();
+
+			// finder pattern, finder sub pattern and alignment patterns as concentric squares
+			assertSquares(matrix, 0, 0, 7, version);
+			assertSquares(matrix, width - 5, height - 5, 5, version);
+			for (int x : version.getAlignmentColumns()) {
+				assertSquares(matrix, x - 1, 0, 3, version);
+				assertSquares(matrix, x - 1, height - 3, 3, version);
+				for (int y = 3; y < height - 3; y++) assertEquals(timing(y), matrix[x][y], version.name());
+			}
+
+			// timing patterns along the edges, away from the corners
+			for (int x = 12; x < width - 8; x++) {
+				if (isAlignment(version, x)) continue;
+				assertEquals(timing(x), matrix[x][0], version.name() + " X: " + x);
+				assertEquals(timing(x), matrix[x][height - 1], version.name() + " X: " + x);
+			}
+
+			// corner finder patterns
+			assertEquals(MatrixConstruction.B, matrix[width - 2][0]);
+			assertEquals(MatrixConstruction.B, matrix[width - 1][1]);
+			assertEquals(MatrixConstruction.W, matrix[width - 2][1]);
+			if (height > 7) {
+				for (int x = 0; x < 3; x++) assertEquals(MatrixConstruction.B, matrix[x][height - 1], version.name());
+			}
+		}
+	}
+
+	@Test
+	void testFormatInformation() {
+		for (RMQRCode.Version version : RMQRCode.Version.values()) {
+			for (Extensions.QRCodeInfos.CorrectionLevel level : new Extensions.QRCodeInfos.CorrectionLevel[] {MEDIUM, HIGH}) {
+				int format = RMQRCode.getFormatInformation(version, level);
+				assertEquals((level == HIGH ? 32 : 0) + version.ordinal(), format >> 12);
+
+				// the BCH code is the remainder of the division by the generator polynomial
+				int remainder = format;
+				for (int i = 17; i >= 12; i--) {
+					if ((remainder >> i & 1) != 0) remainder ^= 0b1111100100101 << (i - 12);
+				}
+				assertEquals(0, remainder);
+			}
+		}
+
+		assertThrows(UnsupportedOperationException.class,
+				() -> RMQRCode.encode("123", RMQRCode.Version.R7x43, Extensions.QRCodeInfos.CorrectionLevel.LOW));
+	}
+
+	@Test
+	void testCapacities() {
+		// largest numeric, alphanumeric and byte capacities of rMQR codes
+		assertEquals(361, decodeCount(RMQRCode.encode(RandomStringUtils.randomNumeric(400), RMQRCode.Version.R17x139, MEDIUM), 4, 9));
+		assertEquals(219, decodeCount(RMQRCode.encode("A".repeat(400), RMQRCode.Version.R17x139, MEDIUM), 4, 8));
+		assertEquals(150, decodeCount(RMQRCode.encode("a".repeat(400), RMQRCode.Version.R17x139, MEDIUM), 4, 8));
+		assertEquals(5, decodeCount(RMQRCode.encode("0123456789", RMQRCode.Version.R7x43, HIGH), 1, 4));
+
+		assertEquals(RMQRCode.Version.R11x27, RMQRCode.fit("1234567890", MEDIUM, 17, 139));
+		assertEquals(RMQRCode.Version.R7x43, RMQRCode.fit("1234567890", MEDIUM, 9, 139));
+		assertEquals(RMQRCode.Version.R13x43, RMQRCode.fit("https://www.epfl.ch/", MEDIUM, 17, 43));
+		assertNull(RMQRCode.fit("https://www.epfl.ch/", HIGH, 17, 43));
+		assertNull(RMQRCode.fit("a".repeat(151), MEDIUM, 17, 139));
+	}
+
+	@Test
+	void testRenderingIsMaskedAndRectangular() {
+		for (RMQRCode.Version version : RMQRCode.Version.values()) {
+			int[][] empty = RMQRCode.renderMatrix(version, MEDIUM, new boolean[0]);
+			int[][] matrix = RMQRCode.renderMatrix(RandomStringUtils.randomAlphanumeric(30), version, MEDIUM);
+			int[][] template = RMQRCode.constructMatrix(version, MEDIUM);
+
+			for (int x = 0; x < version.getWidth(); x++) {
+				for (int y = 0; y < version.getHeight(); y++) {
+					if (template[x][y] == 0) {
+						// without data, the modules only have the mask 4
+						assertEquals(MatrixConstruction.maskColor(x, y, false, 4), empty[x][y], version.name());
+						assertNotEquals(0, matrix[x][y]);
+					} else {
+						assertEquals(template[x][y], matrix[x][y], version.name());
+					}
+				}
+			}
+		}
+	}
+
+	private static void assertSquares(int[][] matrix, int x, int y, int size, RMQRCode.Version version) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				int ring = Math.min(Math.min(i, j), Math.min(size - 1 - i, size - 1 - j));
+				assertEquals(ring % 2 == 0 ? MatrixConstruction.B : MatrixConstruction.W, matrix[x + i][y + j],
+						version.name() + " (" + (x + i) + ", " + (y + j) + ")");
+			}
+		}
+	}
+
+	private static boolean isAlignment(RMQRCode.Version version, int x) {
+		for (int column : version.getAlignmentColumns()) {
+			if (Math.abs(column - x) <= 1) return true;
+		}
+		return false;
+	}
+
+	private static int timing(int coordinate) {
+		return coordinate % 2 == 0 ? MatrixConstruction.B : MatrixConstruction.W;
+	}
+
+	/*
+	 * Count of the characters of the encoded data, read from the first two codewords of the first block
+	 */
+	private static int decodeCount(boolean[] data, int blocks, int countBits) {
+		int count = 0;
+		for (int i = 3; i < 3 + countBits; i++) {
+			int bit = i < 8 ? i : blocks * 8 + i - 8;
+			count = count << 1 | (data[bit] ? 1 : 0);
+		}
+		return count;
+	}
+}
@@ -19,9 +19,11 @@ class RandomizedTests {
      */
     static int[][] imageToMatrix(BufferedImage image) {
         int[][] matrix = new int[image.getWidth()][image.getHeight()];
-        for (int i = 0; i < image.getWidth(); i++) {
-            for (int j = 0; j < image.getHeight(); j++) {
-                matrix[i][j] = image.getRGB(i, j);
+        int[] row = new int[image.getWidth()];
+        for (int j = 0; j < image.getHeight(); j++) {
+            image.getRGB(0, j, row.length, 1, row, 0, row.length);
+            for (int i = 0; i < row.length; i++) {
+                matrix[i][j] = row[i];
             }
         }
         return matrix;
@@ -0,0 +1,78 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SheetWriterTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testSheetsMatchSymbols() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource[] symbols = new ModuleSource[5];
+		for (int i = 0; i < symbols.length; i++) {
+			int version = 1 + i;
+			symbols[i] = ModuleSource.of(version, DataEncoding.byteModeEncoding("Code " + i, version), i);
+		}
+
+		for (SheetWriter.Format format : SheetWriter.Format.values()) {
+			// odd sizes, so that the symbols of PBM sheets share bytes with their neighbours
+			SheetWriter writer = new SheetWriter(format, 3, 2, 83, 85, 5, 2);
+			Path path = directory.resolve("sheet." + format.name().toLowerCase());
+			writer.write(path, symbols.length, i -> symbols[i], 4);
+
+			byte[] file = Files.readAllBytes(path);
+			String header = (format == SheetWriter.Format.PBM ? "P4" : "P5") + "\n" + writer.getWidth() + " "
+					+ writer.getHeight() + (format == SheetWriter.Format.PBM ? "\n" : "\n255\n");
+			assertEquals(header, new String(file, 0, header.length(), StandardCharsets.US_ASCII));
+			assertEquals(header.length() + (long) writer.getStride() * writer.getHeight(), file.length);
+
+			for (int x = 0; x < writer.getWidth(); x++) {
+				for (int y = 0; y < writer.getHeight(); y++) {
+					boolean dark = format == SheetWriter.Format.PBM
+							? (file[header.length() + y * writer.getStride() + (x >>> 3)] & 0x80 >>> (x & 7)) != 0
+							: file[header.length() + y * writer.getStride() + x] == 0;
+					assertEquals(expected(symbols, x, y), dark, format + " X: " + x + " Y: " + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testInvalidSheets() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		ModuleSource symbol = ModuleSource.of(1, DataEncoding.byteModeEncoding("Code", 1), 0);
+		SheetWriter writer = new SheetWriter(SheetWriter.Format.PGM, 2, 2, 40, 40, 0, 2);
+
+		assertThrows(IllegalArgumentException.class, () -> writer.write(directory.resolve("a"), 5, i -> symbol, 1));
+		assertThrows(IllegalArgumentException.class, () -> writer.write(directory.resolve("b"), 1, i -> symbol, 1));
+		assertThrows(IllegalArgumentException.class,
+				() -> new SheetWriter(SheetWriter.Format.PBM, 0, 1, 40, 40, 0, 1));
+	}
+
+	/*
+	 * Color of a pixel of the 3x2 sheet of 83x85 cells with a margin of 5 and modules of 2 pixels
+	 */
+	private static boolean expected(ModuleSource[] symbols, int x, int y) {
+		int cellX = x - 5;
+		int cellY = y - 5;
+		if (cellX < 0 || cellY < 0 || cellX >= 3 * 83 || cellY >= 2 * 85) return false;
+
+		int index = cellY / 85 * 3 + cellX / 83;
+		if (index >= symbols.length) return false;
+
+		ModuleSource symbol = symbols[index];
+		int mx = Math.floorDiv(cellX % 83 - (83 - symbol.getWidth() * 2) / 2, 2);
+		int my = Math.floorDiv(cellY % 85 - (85 - symbol.getHeight() * 2) / 2, 2);
+		return mx >= 0 && my >= 0 && mx < symbol.getWidth() && my < symbol.getHeight() && symbol.isDark(mx, my);
+	}
+}
@@ -0,0 +1,133 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class StampTest {
+
+	/*
+	 * The original loops of MatrixConstruction#addPattern
+	 */
+	private static void referenceAddPattern(MatrixConstruction.Pattern p, MatrixConstruction.Anchor a, int[][] matrix,
+											int x, int y, int maxX, int maxY) {
+		for (int j = 0; j < (p.isRecurring() ? maxY - y + 1 : p.getSize()[0]); j++) {
+			for (int i = 0; i < (p.isRecurring() ? maxX - x + 1 : p.getSize()[1]); i++) {
+				if (p.isRecurring())
+					matrix[j + y][i + x] = p.getPatternMatrix()[j % p.getSize()[0]][i % p.getSize()[1]] == 0 ?
+							MatrixConstruction.W : MatrixConstruction.B;
+				else
+					matrix[j + y - a.translateValues(p.getSize())[0]][i + x - a.translateValues(p.getSize())[1]] =
+							p.getPatternMatrix()[j][i] == 0 ? MatrixConstruction.W : MatrixConstruction.B;
+			}
+		}
+
+		if (p.hasBorders()) {
+			for (int j = -1; j <= p.getSize()[0]; j++) {
+				for (int i = -1; i <= p.getSize()[1]; i++) {
+					int xCord = i + x - a.translateValues(p.getSize())[1];
+					int yCord = j + y - a.translateValues(p.getSize())[0];
+
+					if ((j == -1 && yCord >= 0 && i > -1) ||
+							(i == -1 && xCord >= 0 && j > -1) ||
+							(j == p.getSize()[0] && yCord <= p.getSize()[0] && xCord > -1 && xCord < matrix.length) ||
+							(i == p.getSize()[1] && xCord <= p.getSize()[1] && yCord > -1 && yCord < matrix.length)) {
+						matrix[yCord][xCord] = MatrixConstruction.W;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testStampsMatchTheOriginalLoops() {
+		Random random = new Random(34);
+		int size = 45;
+
+		for (MatrixConstruction.Pattern pattern : MatrixConstruction.Pattern.values()) {
+			for (MatrixConstruction.Anchor anchor : MatrixConstruction.Anchor.values()) {
+				for (int k = 0; k < 200; k++) {
+					int x = random.nextInt(size + 1);
+					int y = random.nextInt(size + 1);
+					int maxX = x + random.nextInt(size - Math.min(x, size - 1));
+					int maxY = y + random.nextInt(size - Math.min(y, size - 1));
+					int[][] expected = new int[size][size];
+					int[][] actual = new int[size][size];
+
+					try {
+						referenceAddPattern(pattern, anchor, expected, x, y, maxX, maxY);
+					} catch (ArrayIndexOutOfBoundsException e) {
+						continue;
+					}
+					MatrixConstruction.addPattern(pattern, anchor, actual, x, y, maxX, maxY);
+
+					assertArrayEquals(expected, actual,
+							"PATTERN: " + pattern + " ANCHOR: " + anchor + " X: " + x + " Y: " + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testQRCodesAreUnchanged() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int v = 1; v <= 40; v++) {
+			int[][] expected = MatrixConstruction.initializeMatrix(v);
+			referenceAddPattern(MatrixConstruction.Pattern.FINDERPATTERN, MatrixConstruction.Anchor.NORTH_WEST,
+					expected, 0, 0, -1, -1);
+			referenceAddPattern(MatrixConstruction.Pattern.FINDERPATTERN, MatrixConstruction.Anchor.NORTH_EAST,
+					expected, expected.length, 0, -1, -1);
+			referenceAddPattern(MatrixConstruction.Pattern.FINDERPATTERN, MatrixConstruction.Anchor.SOUTH_WEST,
+					expected, 0, expected.length, -1, -1);
+
+			int[][] actual = MatrixConstruction.initializeMatrix(v);
+			MatrixConstruction.addFinderPatterns(actual);
+
+			assertArrayEquals(expected, actual, "VERSION: " + v);
+		}
+	}
+
+	@Test
+	void testCustomStampOnPackedMatrix() {
+		int[][] logo = new int[9][70];
+		for (int j = 0; j < logo.length; j++) {
+			for (int i = 0; i < logo[j].length; i++) {
+				logo[j][i] = (i + j) % 3 == 0 ? 1 : 0;
+			}
+		}
+		Stamp stamp = new Stamp(logo, false, true);
+
+		for (int x = 35; x <= 142; x += 13) {
+			int[][] matrix = new int[177][177];
+			stamp.stamp(MatrixConstruction.Anchor.CENTER, matrix, x, 4);
+
+			BitMatrix dark = new BitMatrix(177);
+			BitMatrix covered = new BitMatrix(177);
+			stamp.stamp(MatrixConstruction.Anchor.CENTER, dark, covered, x, 4);
+
+			assertEquals(BitMatrix.fromMatrix(matrix), dark, "X: " + x);
+			assertEquals(BitMatrix.emptyModules(matrix), covered.copy().xor(filled(177)), "X: " + x);
+		}
+	}
+
+	@Test
+	void testStampRejectsRecurringPatternsWithoutMaximum() {
+		Stamp stamp = MatrixConstruction.Pattern.TIMINGPATTERNROW.getStamp();
+		assertThrows(IllegalArgumentException.class,
+				() -> stamp.stamp(MatrixConstruction.Anchor.WEST, new int[21][21], 8, 6));
+		assertThrows(IllegalArgumentException.class,
+				() -> MatrixConstruction.Pattern.FINDERPATTERN.getStamp().stamp(MatrixConstruction.Anchor.NORTH_WEST,
+						new BitMatrix(21), null, 20, 20));
+	}
+
+	private static BitMatrix filled(int size) {
+		BitMatrix filled = new BitMatrix(size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) filled.set(x, y);
+		}
+		return filled;
+	}
+}
@@ -0,0 +1,74 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+class SymbolArenaTest {
+
+	@Test
+	void testArenaSymbolsMatchRendering() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		SymbolArena arena = new SymbolArena(1 << 16);
+
+		for (int version = 1; version <= 40; version += 13) {
+			boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(version * 9), version);
+			for (int mask = 0; mask < 8; mask++) {
+				SymbolArena.Symbol symbol = arena.render(version, data, mask);
+				int[][] expected = MatrixConstruction.renderQRCodeMatrix(version, data, mask);
+
+				assertArrayEquals(expected, symbol.toMatrix(), "VERSION: " + version + " MASK: " + mask);
+				assertEquals(BitMatrix.fromMatrix(expected), symbol.toBitMatrix());
+				for (int y = 0; y < expected.length; y++) {
+					assertArrayEquals(BitMatrix.fromMatrix(expected).getRow(y, null), symbol.getRow(y, null));
+				}
+
+				ByteBuffer bytes = symbol.getBytes();
+				long[] words = BitMatrix.fromMatrix(expected).getWords();
+				assertEquals(words.length * 8, bytes.remaining());
+				for (long word : words) assertEquals(word, bytes.getLong());
+			}
+			arena.reset();
+		}
+	}
+
+	@Test
+	void testSelectedMaskMatchesRendering() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		SymbolArena arena = new SymbolArena(1 << 16);
+
+		for (int round = 0; round < 2; round++) {
+			for (int version = 1; version <= 40; version += 13) {
+				boolean[] data = DataEncoding.byteModeEncoding(RandomStringUtils.randomAlphanumeric(version * 9),
+						version);
+				SymbolArena.Symbol symbol = arena.render(version, data);
+				assertArrayEquals(MatrixConstruction.renderQRCodeMatrix(version, data), symbol.toMatrix(),
+						"VERSION: " + version);
+			}
+			// the candidates of the arena are reused for the same versions
+			arena.reset();
+		}
+	}
+
+	@Test
+	void testResetFreesTheArena() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		boolean[] data = DataEncoding.byteModeEncoding("Hello", 1);
+		// a QR code of version 1 takes 21 words
+		SymbolArena arena = new SymbolArena(21 * 8 * 3);
+
+		SymbolArena.Symbol first = arena.render(1, data, 0);
+		arena.render(1, data, 1);
+		arena.render(1, data, 2);
+		assertEquals(arena.getCapacity(), arena.getUsedBytes());
+		assertThrows(IllegalStateException.class, () -> arena.render(1, data, 3));
+
+		arena.reset();
+		assertEquals(0, arena.getUsedBytes());
+		assertThrows(IllegalStateException.class, () -> first.isDark(0, 0));
+		assertArrayEquals(MatrixConstruction.renderQRCodeMatrix(1, data, 3), arena.render(1, data, 3).toMatrix());
+	}
+}
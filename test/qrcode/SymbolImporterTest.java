@@ -0,0 +1,128 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import io.nayuki.qrcodegen.QrCode;
+
+class SymbolImporterTest {
+
+	@Test
+	void testThresholdMatchesGoldenImages() {
+		for (String name : new String[] {"patterns", "patternsv4", "testV1M0", "NoDataV1M0"}) {
+			int[][] matrix = Helpers.readMatrix(name);
+			BitMatrix expected = new BitMatrix(matrix.length, matrix[0].length);
+			for (int x = 0; x < matrix.length; x++) {
+				for (int y = 0; y < matrix[0].length; y++) {
+					if (matrix[x][y] == MatrixConstruction.B) expected.set(x, y);
+				}
+			}
+			assertEquals(expected, SymbolImporter.threshold(readImage(name)), name);
+		}
+	}
+
+	@Test
+	void testReadRenderings() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 10, 40}) {
+			BitMatrix symbol = BitMatrix.fromMatrix(MatrixConstruction.renderQRCodeMatrix(version,
+					DataEncoding.byteModeEncoding("Hello, World!", version)));
+
+			// 1-bit PNG read back as TYPE_BYTE_BINARY
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			new PngWriter(7, 4, Deflater.BEST_SPEED).write(symbol, png);
+			assertRead(symbol, 7, 4, ImageIO.read(new ByteArrayInputStream(png.toByteArray())));
+
+			BufferedImage gray = Helpers.render(symbol, 3, 2, BufferedImage.TYPE_BYTE_GRAY);
+			assertRead(symbol, 3, 2, gray);
+
+			BufferedImage argb = new BufferedImage(gray.getWidth(), gray.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = argb.createGraphics();
+			graphics.drawImage(gray, 0, 0, null);
+			graphics.dispose();
+			assertRead(symbol, 3, 2, argb);
+		}
+	}
+
+	@Test
+	void testReadSymbolsWithLightEdges() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		// the right column and the bottom row of Micro QR codes are mostly light
+		boolean[] data = MicroQRCode.encode("12345", MicroQRCode.M1, Extensions.QRCodeInfos.CorrectionLevel.LOW);
+		BitMatrix symbol = BitMatrix.fromMatrix(MicroQRCode.renderMatrix(MicroQRCode.M1, data));
+		assertRead(symbol, 5, 2, Helpers.render(symbol, 5, 2, BufferedImage.TYPE_BYTE_BINARY));
+
+		// no quiet zone
+		QrCode code = QrCode.encodeText("Hello, World!", QrCode.Ecc.LOW);
+		BufferedImage image = code.toImage(4, 0);
+		SymbolImporter.Result result = SymbolImporter.read(image);
+		assertEquals(4, result.getModuleSize());
+		assertEquals(0, result.getQuietZone());
+		for (int x = 0; x < code.size; x++) {
+			for (int y = 0; y < code.size; y++) {
+				assertEquals(code.getModule(x, y), result.getModules().get(x, y));
+			}
+		}
+	}
+
+	@Test
+	void testReadInvalidImages() {
+		BufferedImage blank = new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY);
+		for (int x = 0; x < 20; x++) {
+			for (int y = 0; y < 20; y++) blank.getRaster().setSample(x, y, 0, 255);
+		}
+		assertThrows(IllegalArgumentException.class, () -> SymbolImporter.read(blank));
+
+		blank.getRaster().setSample(2, 5, 0, 0);
+		assertThrows(IllegalArgumentException.class, () -> SymbolImporter.read(blank));
+	}
+
+	@Test
+	void testReadAsymmetricQuietZones() {
+		MatrixConstruction.USE_EXTENSIONS = true;
+		BitMatrix symbol = BitMatrix.fromMatrix(MatrixConstruction.renderQRCodeMatrix(1,
+				DataEncoding.byteModeEncoding("Hello", 1)));
+		BufferedImage image = Helpers.render(symbol, 3, 2, BufferedImage.TYPE_BYTE_GRAY);
+
+		// one more module of quiet zone on the right, then on the bottom
+		for (int[] padding : new int[][] {{3, 0}, {0, 3}}) {
+			BufferedImage padded = new BufferedImage(image.getWidth() + padding[0], image.getHeight() + padding[1],
+					BufferedImage.TYPE_BYTE_GRAY);
+			Graphics2D graphics = padded.createGraphics();
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, padded.getWidth(), padded.getHeight());
+			graphics.drawImage(image, 0, 0, null);
+			graphics.dispose();
+			assertThrows(IllegalArgumentException.class, () -> SymbolImporter.read(padded));
+		}
+	}
+
+	private static void assertRead(BitMatrix expected, int moduleSize, int quietZone, BufferedImage image) {
+		SymbolImporter.Result result = SymbolImporter.read(image);
+		assertEquals(moduleSize, result.getModuleSize());
+		assertEquals(quietZone, result.getQuietZone());
+		assertEquals(expected, result.getModules());
+	}
+
+	private static BufferedImage readImage(String name) {
+		try {
+			return ImageIO.read(new File("images", name + ".png"));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class VectorWriterTest {
+
+	private static final Pattern SVG_RUN = Pattern.compile("M(\\d+) (\\d+)h(\\d+)v1h-(\\d+)z");
+	private static final Pattern PDF_RUN = Pattern.compile("(\\d+) (\\d+) (\\d+) (\\d+) re\n");
+
+	@Test
+	void testSvgRunsCoverDarkModules() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		for (int version : new int[] {1, 2, 20, 40}) {
+			int[][] matrix = MatrixConstruction.renderQRCodeMatrix(version,
+					DataEncoding.byteModeEncoding("Hello, World!", version));
+			VectorWriter writer = new VectorWriter(10, 4);
+			StringWriter output = new StringWriter();
+			writer.writeSvg(BitMatrix.fromMatrix(matrix), output);
+
+			String svg = output.toString();
+			int size = matrix.length + 8;
+			assertTrue(svg.contains("viewBox=\"0 0 " + size + " " + size + "\""));
+			assertTrue(svg.contains("width=\"" + size * 10 + "\""));
+
+			boolean[][] painted = new boolean[matrix.length][matrix.length];
+			Matcher run = SVG_RUN.matcher(svg);
+			while (run.find()) {
+				assertEquals(run.group(3), run.group(4));
+				paint(painted, Integer.parseInt(run.group(1)) - 4, Integer.parseInt(run.group(2)) - 4,
+						Integer.parseInt(run.group(3)));
+			}
+			assertPainted(matrix, painted);
+		}
+	}
+
+	@Test
+	void testPdfPathCoversDarkModules() throws IOException {
+		MatrixConstruction.USE_EXTENSIONS = true;
+
+		int[][] matrix = MatrixConstruction.renderQRCodeMatrix(7, DataEncoding.byteModeEncoding("Hello, World!", 7));
+		VectorWriter writer = new VectorWriter(3, 2);
+		StringBuilder output = new StringBuilder();
+		writer.writePdfPath(BitMatrix.fromMatrix(matrix), output);
+		assertTrue(output.toString().endsWith("f\n"));
+
+		int height = matrix.length + 4;
+		boolean[][] painted = new boolean[matrix.length][matrix.length];
+		Matcher run = PDF_RUN.matcher(output);
+		while (run.find()) {
+			assertEquals(3, Integer.parseInt(run.group(4)));
+			int x = Integer.parseInt(run.group(1)) / 3 - 2;
+			int y = height - 1 - Integer.parseInt(run.group(2)) / 3 - 2;
+			paint(painted, x, y, Integer.parseInt(run.group(3)) / 3);
+		}
+		assertPainted(matrix, painted);
+	}
+
+	@Test
+	void testRunsAcrossWords() throws IOException {
+		BitMatrix matrix = new BitMatrix(150, 2);
+		for (int x = 60; x < 140; x++) matrix.set(x, 0, true);
+		matrix.set(149, 1, true);
+
+		StringBuilder runs = new StringBuilder();
+		VectorWriter.forEachRun(matrix, (x, y, length) -> runs.append(x).append(',').append(y).append(',')
+				.append(length).append(';'));
+		assertEquals("60,0,80;149,1,1;", runs.toString());
+	}
+
+	/*
+	 * Paint a run, which must not overlap nor touch a run already painted
+	 */
+	private static void paint(boolean[][] painted, int x, int y, int length) {
+		assertTrue(x == 0 || !painted[x - 1][y], "The run at " + x + ", " + y + " is not maximal");
+		for (int i = x; i < x + length; i++) {
+			assertFalse(painted[i][y]);
+			painted[i][y] = true;
+		}
+	}
+
+	private static void assertPainted(int[][] matrix, boolean[][] painted) {
+		for (int x = 0; x < matrix.length; x++) {
+			for (int y = 0; y < matrix.length; y++) {
+				assertEquals(matrix[x][y] == MatrixConstruction.B, painted[x][y], "X: " + x + " Y: " + y);
+			}
+		}
+	}
+}